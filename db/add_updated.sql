@@ -0,0 +1,13 @@
+-- Adds the updated columns of schema.sql to an existing database, ETags are built from them.
+-- Existing rows get the time of the migration. Run after partition_message.sql if that is needed too.
+BEGIN;
+
+ALTER TABLE message ADD COLUMN IF NOT EXISTS updated timestamp NOT NULL DEFAULT now();
+ALTER TABLE message ALTER COLUMN updated DROP DEFAULT;
+ALTER TABLE room ADD COLUMN IF NOT EXISTS updated timestamp NOT NULL DEFAULT now();
+ALTER TABLE room ALTER COLUMN updated DROP DEFAULT;
+ALTER TABLE person ADD COLUMN IF NOT EXISTS updated timestamp NOT NULL DEFAULT now();
+ALTER TABLE person ALTER COLUMN updated DROP DEFAULT;
+ALTER TABLE role ADD COLUMN IF NOT EXISTS updated timestamp NOT NULL DEFAULT now();
+
+COMMIT;
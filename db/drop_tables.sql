@@ -2,3 +2,5 @@ drop table role;
 drop table person;
 drop table message;
 drop table room;
+drop table room_purge;
+drop table read_marker;
@@ -0,0 +1,39 @@
+-- Moves an existing unpartitioned message table to the partitioned one of schema.sql.
+-- Monthly partitions are created for the whole history, PartitionManager takes over from there.
+BEGIN;
+
+ALTER TABLE message RENAME TO message_unpartitioned;
+ALTER TABLE message_unpartitioned RENAME CONSTRAINT message_pkey TO message_unpartitioned_pkey;
+ALTER INDEX message_room_id_created_id_idx RENAME TO message_unpartitioned_room_id_created_id_idx;
+
+CREATE TABLE message (
+	id integer NOT NULL DEFAULT nextval('message_id_seq'),
+	text varchar(2000) NOT NULL,
+	created timestamp NOT NULL,
+	room_id integer NOT NULL,
+	author_id integer NOT NULL,
+	PRIMARY KEY (id, created)
+) PARTITION BY RANGE (created);
+ALTER SEQUENCE message_id_seq OWNED BY message.id;
+
+CREATE TABLE message_default PARTITION OF message DEFAULT;
+
+DO $$
+DECLARE
+	month date;
+BEGIN
+	FOR month IN
+		SELECT generate_series(date_trunc('month', min(created)), date_trunc('month', now()), interval '1 month')
+		FROM message_unpartitioned
+	LOOP
+		EXECUTE format('CREATE TABLE message_p%s PARTITION OF message FOR VALUES FROM (%L) TO (%L)',
+			to_char(month, 'YYYYMM'), month, month + interval '1 month');
+	END LOOP;
+END $$;
+
+CREATE INDEX message_room_id_created_id_idx ON message (room_id, created, id);
+
+INSERT INTO message SELECT id, text, created, room_id, author_id FROM message_unpartitioned;
+DROP TABLE message_unpartitioned;
+
+COMMIT;
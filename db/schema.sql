@@ -1,16 +1,43 @@
+-- Partitioned by month of created, see PartitionManager, which creates partitions ahead
+-- and drops or detaches the ones past retention. The key has to include created.
 CREATE TABLE IF NOT EXISTS message (
-	id serial PRIMARY KEY,
+	id serial,
 	text varchar(2000) NOT NULL,
 	created timestamp NOT NULL,
 	room_id integer NOT NULL,
-	author_id integer NOT NULL
-);
+	author_id integer NOT NULL,
+	updated timestamp NOT NULL,
+	PRIMARY KEY (id, created)
+) PARTITION BY RANGE (created);
+
+-- rows outside of the monthly partitions, e.g. messages backdated by PATCH
+CREATE TABLE IF NOT EXISTS message_default PARTITION OF message DEFAULT;
+
+-- Hibernate allocates message ids in blocks of 50 (pooled optimizer), see Message.id
+ALTER SEQUENCE message_id_seq INCREMENT BY 50;
+
+CREATE INDEX IF NOT EXISTS message_room_id_created_id_idx ON message (room_id, created, id);
 
 CREATE TABLE IF NOT EXISTS room (
 	id serial PRIMARY KEY,
 	name varchar(200) UNIQUE NOT NULL,
 	created timestamp NOT NULL,
-	author_id integer NOT NULL
+	author_id integer NOT NULL,
+	updated timestamp NOT NULL,
+	deleted boolean NOT NULL DEFAULT false
+);
+
+CREATE INDEX IF NOT EXISTS room_author_id_idx ON room (author_id);
+
+CREATE TABLE IF NOT EXISTS room_purge (
+	id serial PRIMARY KEY,
+	room_id integer NOT NULL,
+	up_to timestamp,
+	drop_room boolean NOT NULL,
+	status varchar(20) NOT NULL,
+	purged bigint NOT NULL,
+	created timestamp NOT NULL,
+	finished timestamp
 );
 
 CREATE TABLE IF NOT EXISTS person (
@@ -18,12 +45,26 @@ CREATE TABLE IF NOT EXISTS person (
 	name varchar(200) UNIQUE NOT NULL,
 	password varchar(200) NOT NULL,
 	created timestamp NOT NULL,
-	role_id integer NOT NULL
+	role_id integer NOT NULL,
+	updated timestamp NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS read_marker (
+	id serial PRIMARY KEY,
+	person_id integer NOT NULL,
+	room_id integer NOT NULL,
+	last_read_message_id integer NOT NULL,
+	last_read_created timestamp NOT NULL,
+	unread_count integer NOT NULL,
+	UNIQUE (person_id, room_id)
 );
 
+CREATE INDEX IF NOT EXISTS read_marker_room_id_idx ON read_marker (room_id);
+
 CREATE TABLE IF NOT EXISTS role (
 	id serial PRIMARY KEY,
-	name varchar(200) UNIQUE NOT NULL
+	name varchar(200) UNIQUE NOT NULL,
+	updated timestamp NOT NULL DEFAULT now()
 );
 
 INSERT INTO role (name) values ('ROLE_USER');
@@ -0,0 +1,84 @@
+package ru.job4j.chat.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.util.FileSystemUtils;
+import ru.job4j.chat.domain.Message;
+import ru.job4j.chat.service.MessageArchive;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads of MessageArchive: a full scan of a room, reported per message,
+ * and a page of history deep inside the room.
+ * The segment is written once per trial into a temporary directory and stays in the page cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ArchiveScanBenchmark {
+    private static final int ROOMS = 10;
+    private static final int MESSAGES_PER_ROOM = 100_000;
+    private static final int PAGE_SIZE = 50;
+
+    @Param({"1000"})
+    private int blockSize;
+
+    private Path dir;
+    private MessageArchive archive;
+    private Message middle;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("archive-benchmark");
+        archive = new MessageArchive(dir.toString(), blockSize);
+        archive.load();
+        LocalDateTime start = LocalDateTime.now().minusYears(1);
+        List<Message> messages = new ArrayList<>(ROOMS * MESSAGES_PER_ROOM);
+        for (int i = 0; i < ROOMS * MESSAGES_PER_ROOM; i++) {
+            Message message = new Message("Message number " + i + " of the benchmark room, long enough to be realistic");
+            message.setId(i + 1);
+            message.setRoomId(i % ROOMS + 1);
+            message.setAuthorId(i % 100);
+            message.setCreated(start.plusSeconds(i));
+            messages.add(message);
+        }
+        archive.append(messages);
+        middle = messages.get(messages.size() / 2);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileSystemUtils.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES_PER_ROOM)
+    public void scanRoom(Blackhole blackhole) {
+        Iterator<Message> history = archive.history(1);
+        while (history.hasNext()) {
+            blackhole.consume(history.next());
+        }
+    }
+
+    @Benchmark
+    public List<Message> pageInTheMiddle() {
+        return archive.findBefore(middle.getRoomId(), middle, null, PAGE_SIZE);
+    }
+}
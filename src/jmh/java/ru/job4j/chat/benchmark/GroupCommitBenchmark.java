@@ -0,0 +1,71 @@
+package ru.job4j.chat.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.job4j.chat.domain.Message;
+import ru.job4j.chat.service.MessageWriter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Messages per second created by concurrent requests through MessageWriter,
+ * each in its own transaction or in group commits.
+ * On H2 in memory the gain comes from fewer transactions and pooled connections;
+ * run with -p db=postgresql against a local PostgreSQL created from db/schema.sql
+ * to include the commit fsync that group commit amortizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(32)
+public class GroupCommitBenchmark {
+
+    @Param({"false", "true"})
+    private boolean groupCommit;
+
+    @Param({"h2"})
+    private String db;
+
+    private ConfigurableApplicationContext context;
+    private MessageWriter messageWriter;
+
+    @Setup
+    public void setUp() {
+        String enabled = "chat.group-commit.enabled=" + groupCommit;
+        if ("postgresql".equals(db)) {
+            context = BenchmarkContext.start(
+                    enabled,
+                    "spring.datasource.url=jdbc:postgresql://127.0.0.1:5432/chat?reWriteBatchedInserts=true",
+                    "spring.datasource.username=postgres",
+                    "spring.datasource.password=password",
+                    "spring.datasource.driver-class-name=org.postgresql.Driver",
+                    "spring.jpa.database-platform=org.hibernate.dialect.PostgreSQLDialect"
+            );
+        } else {
+            context = BenchmarkContext.start(enabled);
+        }
+        messageWriter = context.getBean(MessageWriter.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Message create() {
+        Message message = new Message("benchmark message");
+        message.setRoomId(1);
+        message.setAuthorId(1);
+        return messageWriter.create(message);
+    }
+}
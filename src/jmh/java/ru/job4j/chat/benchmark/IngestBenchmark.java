@@ -0,0 +1,88 @@
+package ru.job4j.chat.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.job4j.chat.domain.Message;
+import ru.job4j.chat.repository.MessageRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Messages per second inserted one transaction per message (POST /message/)
+ * against one batched transaction (POST /message/batch).
+ * Run with -p db=h2,postgresql to include a local PostgreSQL created from db/schema.sql.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class IngestBenchmark {
+    private static final int MESSAGES = 1000;
+
+    @Param({"h2"})
+    private String db;
+
+    private ConfigurableApplicationContext context;
+    private MessageRepository messageRepository;
+    private TransactionTemplate transaction;
+
+    @Setup
+    public void setUp() {
+        if ("postgresql".equals(db)) {
+            context = BenchmarkContext.start(
+                    "spring.datasource.url=jdbc:postgresql://127.0.0.1:5432/chat?reWriteBatchedInserts=true",
+                    "spring.datasource.username=postgres",
+                    "spring.datasource.password=password",
+                    "spring.datasource.driver-class-name=org.postgresql.Driver",
+                    "spring.jpa.database-platform=org.hibernate.dialect.PostgreSQLDialect"
+            );
+        } else {
+            context = BenchmarkContext.start();
+        }
+        messageRepository = context.getBean(MessageRepository.class);
+        transaction = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    private List<Message> messages() {
+        List<Message> messages = new ArrayList<>(MESSAGES);
+        for (int i = 0; i < MESSAGES; i++) {
+            Message message = new Message("benchmark message " + i);
+            message.setRoomId(1);
+            message.setAuthorId(1);
+            messages.add(message);
+        }
+        return messages;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public void singleInserts() {
+        for (Message message : messages()) {
+            transaction.executeWithoutResult(status -> messageRepository.save(message));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public void batchInsert() {
+        List<Message> messages = messages();
+        transaction.executeWithoutResult(status -> messageRepository.saveAllInBatches(messages));
+    }
+}
@@ -0,0 +1,63 @@
+package ru.job4j.chat.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import ru.job4j.chat.domain.Message;
+import ru.job4j.chat.domain.Room;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization of message pages and of a room with embedded messages,
+ * with an ObjectMapper configured the way Spring Boot configures it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JsonBenchmark {
+    @Param({"50", "500"})
+    private int messages;
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    private List<Message> page;
+    private Room room;
+
+    @Setup
+    public void setUp() {
+        page = new ArrayList<>(messages);
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < messages; i++) {
+            Message message = new Message("Message number " + i + " of the benchmark room, long enough to be realistic");
+            message.setId(i);
+            message.setRoomId(1);
+            message.setAuthorId(i % 10);
+            message.setCreated(now.minusSeconds(i));
+            page.add(message);
+        }
+        room = new Room("benchmark");
+        room.setId(1);
+        room.setMessages(page);
+    }
+
+    @Benchmark
+    public byte[] messageList() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(page);
+    }
+
+    @Benchmark
+    public byte[] roomWithMessages() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(room);
+    }
+}
@@ -0,0 +1,54 @@
+package ru.job4j.chat.benchmark;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTVerifier;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import static com.auth0.jwt.algorithms.Algorithm.HMAC512;
+import static ru.job4j.chat.security.JWTAuthenticationFilter.EXPIRATION_TIME;
+import static ru.job4j.chat.security.JWTAuthenticationFilter.SECRET;
+
+/**
+ * Token signing as in JWTAuthenticationFilter and verification as in JWTAuthorizationFilter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JwtBenchmark {
+    private final JWTVerifier verifier = JWT.require(Algorithm.HMAC512(SECRET.getBytes())).build();
+    private String token;
+
+    @Setup
+    public void setUp() {
+        token = sign();
+    }
+
+    @Benchmark
+    public String sign() {
+        return JWT.create()
+                .withSubject("benchmark")
+                .withExpiresAt(new Date(System.currentTimeMillis() + EXPIRATION_TIME))
+                .sign(HMAC512(SECRET.getBytes()));
+    }
+
+    @Benchmark
+    public DecodedJWT verify() {
+        return verifier.verify(token);
+    }
+
+    @Benchmark
+    public DecodedJWT buildVerifierAndVerify() {
+        return JWT.require(Algorithm.HMAC512(SECRET.getBytes())).build().verify(token);
+    }
+}
@@ -0,0 +1,95 @@
+package ru.job4j.chat.benchmark;
+
+import com.auth0.jwt.JWT;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.web.client.RestTemplate;
+import ru.job4j.chat.domain.Person;
+import ru.job4j.chat.domain.Role;
+import ru.job4j.chat.domain.Room;
+import ru.job4j.chat.repository.PersonRepository;
+import ru.job4j.chat.repository.RoleRepository;
+import ru.job4j.chat.repository.RoomRepository;
+import ru.job4j.chat.service.ReferenceValidator;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.auth0.jwt.algorithms.Algorithm.HMAC512;
+import static ru.job4j.chat.security.JWTAuthenticationFilter.HEADER_STRING;
+import static ru.job4j.chat.security.JWTAuthenticationFilter.SECRET;
+import static ru.job4j.chat.security.JWTAuthenticationFilter.TOKEN_PREFIX;
+
+/**
+ * Cost of validating the author and the room of a new message:
+ * loopback HTTP calls (the old way) against in-process existence checks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ReferenceValidationBenchmark {
+    private ConfigurableApplicationContext context;
+    private ReferenceValidator validator;
+    private PersonRepository personRepository;
+    private RoomRepository roomRepository;
+    private RestTemplate restTemplate;
+    private HttpEntity<Void> authorized;
+    private String baseUrl;
+    private int personId;
+    private int roomId;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkContext.start();
+        validator = context.getBean(ReferenceValidator.class);
+        personRepository = context.getBean(PersonRepository.class);
+        roomRepository = context.getBean(RoomRepository.class);
+        Role role = context.getBean(RoleRepository.class).save(new Role("ROLE_USER"));
+        Person person = new Person("benchmark");
+        person.setPassword(context.getBean(PasswordEncoder.class).encode("password"));
+        person.setRoleId(role.getId());
+        personId = personRepository.save(person).getId();
+        Room room = new Room("benchmark");
+        room.setAuthorId(personId);
+        roomId = roomRepository.save(room).getId();
+
+        String token = JWT.create().withSubject(person.getName()).sign(HMAC512(SECRET.getBytes()));
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HEADER_STRING, TOKEN_PREFIX + token);
+        authorized = new HttpEntity<>(headers);
+        restTemplate = new RestTemplate();
+        baseUrl = "http://localhost:" + BenchmarkContext.port(context);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Object loopbackHttp() {
+        restTemplate.exchange(baseUrl + "/person/" + personId, HttpMethod.GET, authorized, Person.class);
+        return restTemplate.exchange(baseUrl + "/room/" + roomId, HttpMethod.GET, authorized, Room.class);
+    }
+
+    @Benchmark
+    public boolean existsByIdQueries() {
+        return personRepository.existsById(personId) & roomRepository.existsById(roomId);
+    }
+
+    @Benchmark
+    public void referenceValidator() {
+        validator.checkPersonExists(personId);
+        validator.checkRoomExists(roomId);
+    }
+}
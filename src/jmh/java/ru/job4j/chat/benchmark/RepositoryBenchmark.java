@@ -0,0 +1,70 @@
+package ru.job4j.chat.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.job4j.chat.domain.Message;
+import ru.job4j.chat.domain.Person;
+import ru.job4j.chat.repository.MessageRepository;
+import ru.job4j.chat.repository.PersonRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Repository queries on the request hot paths against an embedded H2 database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RepositoryBenchmark {
+    @Param({"100", "10000"})
+    private int roomSize;
+
+    private ConfigurableApplicationContext context;
+    private MessageRepository messageRepository;
+    private PersonRepository personRepository;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkContext.start();
+        messageRepository = context.getBean(MessageRepository.class);
+        personRepository = context.getBean(PersonRepository.class);
+        Person person = new Person("benchmark");
+        person.setPassword("password");
+        person.setRoleId(1);
+        personRepository.save(person);
+        List<Message> messages = new ArrayList<>(roomSize);
+        for (int i = 0; i < roomSize; i++) {
+            Message message = new Message("message " + i);
+            message.setRoomId(1);
+            message.setAuthorId(person.getId());
+            messages.add(message);
+        }
+        messageRepository.saveAllInBatches(messages);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<Message> findByRoomId() {
+        return messageRepository.findByRoomId(1);
+    }
+
+    @Benchmark
+    public Optional<Person> findPersonByName() {
+        return personRepository.findByName("benchmark");
+    }
+}
@@ -0,0 +1,88 @@
+package ru.job4j.chat.loadtest;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Latencies and errors of one endpoint. Every latency is kept, so percentiles are exact;
+ * a run of a few minutes at a few thousand requests per second takes some megabytes.
+ */
+final class EndpointStats {
+    private static final double[] PERCENTILES = {50, 95, 99, 99.9};
+    private static final String[] PERCENTILE_NAMES = {"p50", "p95", "p99", "p999"};
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private long[] latencies = new long[1024];
+    private int count;
+    private long errorCount;
+    private final Map<String, Long> errors = new TreeMap<>();
+
+    /**
+     * @param nanos time from the scheduled start of the request to the end of the response.
+     */
+    synchronized void success(long nanos) {
+        if (count == latencies.length) {
+            latencies = Arrays.copyOf(latencies, count * 2);
+        }
+        latencies[count++] = nanos;
+    }
+
+    /**
+     * @param reason status code or exception, errors are counted per reason.
+     */
+    synchronized void failure(String reason) {
+        errorCount++;
+        errors.merge(reason, 1L, Long::sum);
+    }
+
+    synchronized void addAll(EndpointStats other) {
+        synchronized (other) {
+            for (int i = 0; i < other.count; i++) {
+                success(other.latencies[i]);
+            }
+            errorCount += other.errorCount;
+            other.errors.forEach((reason, number) -> errors.merge(reason, number, Long::sum));
+        }
+    }
+
+    /**
+     * @param seconds length of the measured part of the run.
+     * @return throughput, error rate and latency percentiles in milliseconds of successful requests.
+     */
+    synchronized Map<String, Object> summary(double seconds) {
+        long requests = count + errorCount;
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("requests", requests);
+        result.put("errors", errorCount);
+        result.put("errorRate", requests == 0 ? 0.0 : (double) errorCount / requests);
+        result.put("throughput", requests / seconds);
+        Map<String, Object> latency = new LinkedHashMap<>();
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            latency.put(PERCENTILE_NAMES[i], millis(percentile(sorted, PERCENTILES[i])));
+        }
+        latency.put("max", millis(count == 0 ? 0 : sorted[count - 1]));
+        latency.put("mean", millis(count == 0 ? 0 : (long) Arrays.stream(sorted).average().orElse(0)));
+        result.put("latencyMs", latency);
+        result.put("errorsByReason", new TreeMap<>(errors));
+        return result;
+    }
+
+    /**
+     * Nearest-rank percentile.
+     */
+    private static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    private static double millis(long nanos) {
+        return Math.round(nanos / NANOS_PER_MILLI * 1000) / 1000.0;
+    }
+}
@@ -0,0 +1,248 @@
+package ru.job4j.chat.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.job4j.chat.ChatApplication;
+
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load test of the chat: virtual users send a mix of sign-ups, logins, room creations,
+ * messages and room reads at a fixed total rate, and the run ends with a report of throughput,
+ * latency percentiles and errors per endpoint, printed and written as JSON.
+ * Without --url the application is started in this JVM with the h2 profile,
+ * with --url an already running server is loaded.
+ * Options, all --name=value:
+ * users (50), rate in requests per second of all users (200), warmup (10s), duration (60s),
+ * mix (sign-up=2,login=3,create-room=5,post-message=50,read-room=40), timeout (10s),
+ * report (target/loadtest-report.json), url. Other arguments go to the application,
+ * e.g. --chat.group-commit.enabled=true.
+ */
+public final class LoadTest {
+    private static final String DEFAULT_MIX = "sign-up=2,login=3,create-room=5,post-message=50,read-room=40";
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        options.put("users", "50");
+        options.put("rate", "200");
+        options.put("warmup", "10s");
+        options.put("duration", "60s");
+        options.put("mix", DEFAULT_MIX);
+        options.put("timeout", "10s");
+        options.put("report", "target/loadtest-report.json");
+        options.put("url", "");
+        List<String> applicationArgs = new ArrayList<>();
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            String key = arg.startsWith("--") && equals > 0 ? arg.substring(2, equals) : null;
+            if (key != null && options.containsKey(key)) {
+                options.put(key, arg.substring(equals + 1));
+            } else if (!arg.isBlank()) {
+                applicationArgs.add(arg);
+            }
+        }
+        int users = Integer.parseInt(options.get("users"));
+        double rate = Double.parseDouble(options.get("rate"));
+        if (users < 1 || rate <= 0) {
+            throw new IllegalArgumentException("Users and rate must be positive");
+        }
+        Operation.Mix mix = Operation.Mix.parse(options.get("mix"));
+        Duration warmup = DurationStyle.detectAndParse(options.get("warmup"));
+        Duration duration = DurationStyle.detectAndParse(options.get("duration"));
+        Duration timeout = DurationStyle.detectAndParse(options.get("timeout"));
+
+        ConfigurableApplicationContext context = null;
+        String url = options.get("url");
+        if (url.isEmpty()) {
+            context = new SpringApplicationBuilder(ChatApplication.class)
+                    .profiles("h2")
+                    .properties("server.port=0", "logging.level.root=WARN")
+                    .run(applicationArgs.toArray(String[]::new));
+            url = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+        }
+        try {
+            HttpClient client = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(timeout)
+                    .build();
+            Run run = new Run(url, client, mix, timeout, users, rate);
+            Map<String, Object> report = run.execute(warmup, duration);
+            report.put("config", Map.of(
+                    "url", url, "users", users, "rate", rate, "warmup", warmup.toString(),
+                    "duration", duration.toString(), "mix", options.get("mix")));
+            print(report);
+            Path path = Paths.get(options.get("report"));
+            if (path.toAbsolutePath().getParent() != null) {
+                Files.createDirectories(path.toAbsolutePath().getParent());
+            }
+            new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(path.toFile(), report);
+            System.out.println("Report written to " + path.toAbsolutePath());
+        } finally {
+            if (context != null) {
+                context.close();
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void print(Map<String, Object> report) {
+        System.out.printf("%-22s %9s %8s %9s %9s %9s %9s %9s%n",
+                "endpoint", "req/s", "errors", "p50 ms", "p95 ms", "p99 ms", "p999 ms", "max ms");
+        Map<String, Object> rows = new LinkedHashMap<>((Map<String, Object>) report.get("endpoints"));
+        rows.put("total", report.get("total"));
+        rows.forEach((endpoint, value) -> {
+            Map<String, Object> stats = (Map<String, Object>) value;
+            Map<String, Object> latency = (Map<String, Object>) stats.get("latencyMs");
+            System.out.printf("%-22s %9.1f %7.2f%% %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                    endpoint, stats.get("throughput"), (double) stats.get("errorRate") * 100,
+                    latency.get("p50"), latency.get("p95"), latency.get("p99"), latency.get("p999"),
+                    latency.get("max"));
+            Map<String, Long> errors = (Map<String, Long>) stats.get("errorsByReason");
+            if (!errors.isEmpty()) {
+                System.out.printf("%-22s %s%n", "", errors);
+            }
+        });
+    }
+
+    /**
+     * State of a run shared by its virtual users.
+     * Requests are spread evenly: with u users and rate r the k-th request of user i
+     * is scheduled at start + (k * u + i) / r.
+     */
+    static final class Run {
+        private final String url;
+        private final HttpClient client;
+        private final Operation.Mix mix;
+        private final Duration timeout;
+        private final int users;
+        private final double intervalNanos;
+        private final String prefix = "lt" + Long.toString(System.currentTimeMillis(), Character.MAX_RADIX);
+        private final Map<Operation, EndpointStats> stats = new EnumMap<>(Operation.class);
+        private final List<Integer> rooms = new ArrayList<>();
+        private long start;
+        private long measureFrom;
+        private long end;
+
+        Run(String url, HttpClient client, Operation.Mix mix, Duration timeout, int users, double rate) {
+            this.url = url;
+            this.client = client;
+            this.mix = mix;
+            this.timeout = timeout;
+            this.users = users;
+            this.intervalNanos = NANOS_PER_SECOND / rate;
+            for (Operation operation : Operation.values()) {
+                stats.put(operation, new EndpointStats());
+            }
+        }
+
+        Map<String, Object> execute(Duration warmup, Duration duration) throws Exception {
+            ExecutorService executor = Executors.newFixedThreadPool(users);
+            try {
+                List<VirtualUser> virtualUsers = new ArrayList<>();
+                List<Future<Void>> setUps = new ArrayList<>();
+                for (int i = 0; i < users; i++) {
+                    VirtualUser user = new VirtualUser(i, this);
+                    virtualUsers.add(user);
+                    setUps.add(executor.submit(() -> {
+                        user.setUp();
+                        return null;
+                    }));
+                }
+                for (Future<Void> setUp : setUps) {
+                    setUp.get();
+                }
+                start = System.nanoTime();
+                measureFrom = start + warmup.toNanos();
+                end = measureFrom + duration.toNanos();
+                virtualUsers.forEach(executor::execute);
+            } finally {
+                executor.shutdown();
+            }
+            long grace = duration.plus(timeout).toMillis() + warmup.toMillis();
+            if (!executor.awaitTermination(grace + TimeUnit.SECONDS.toMillis(10), TimeUnit.MILLISECONDS)) {
+                executor.shutdownNow();
+            }
+            // requests scheduled in the window may finish after it when the server falls behind,
+            // then the throughput is lower than the rate
+            double seconds = (Math.max(end, System.nanoTime()) - measureFrom) / NANOS_PER_SECOND;
+            Map<String, Object> endpoints = new LinkedHashMap<>();
+            EndpointStats total = new EndpointStats();
+            stats.forEach((operation, endpoint) -> {
+                if (mix.getWeights().containsKey(operation)) {
+                    endpoints.put(operation.getEndpoint(), endpoint.summary(seconds));
+                    total.addAll(endpoint);
+                }
+            });
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("started", OffsetDateTime.now().minusNanos(System.nanoTime() - start).toString());
+            report.put("endpoints", endpoints);
+            report.put("total", total.summary(seconds));
+            return report;
+        }
+
+        long scheduledTime(long k, int index) {
+            return start + (long) ((k * users + index) * intervalNanos);
+        }
+
+        EndpointStats stats(Operation operation) {
+            return stats.get(operation);
+        }
+
+        synchronized void addRoom(int roomId) {
+            rooms.add(roomId);
+        }
+
+        synchronized int randomRoom(Random random) {
+            return rooms.get(random.nextInt(rooms.size()));
+        }
+
+        String getUrl() {
+            return url;
+        }
+
+        HttpClient getClient() {
+            return client;
+        }
+
+        Operation.Mix getMix() {
+            return mix;
+        }
+
+        Duration getTimeout() {
+            return timeout;
+        }
+
+        String getPrefix() {
+            return prefix;
+        }
+
+        long getMeasureFrom() {
+            return measureFrom;
+        }
+
+        long getEnd() {
+            return end;
+        }
+    }
+}
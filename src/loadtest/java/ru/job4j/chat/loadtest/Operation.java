@@ -0,0 +1,90 @@
+package ru.job4j.chat.loadtest;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Request a virtual user sends, with the endpoint it is reported under.
+ */
+enum Operation {
+    SIGN_UP("POST /person/sign-up/"),
+    LOGIN("POST /login"),
+    CREATE_ROOM("POST /room/"),
+    POST_MESSAGE("POST /message/"),
+    READ_ROOM("GET /room/{id}");
+
+    private final String endpoint;
+
+    Operation(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    String getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * @return name used in the mix, e.g. post-message.
+     */
+    String key() {
+        return name().toLowerCase().replace('_', '-');
+    }
+
+    static Operation of(String key) {
+        for (Operation operation : values()) {
+            if (operation.key().equals(key)) {
+                return operation;
+            }
+        }
+        throw new IllegalArgumentException("Unknown operation " + key + " in the mix");
+    }
+
+    /**
+     * Weighted choice of operations.
+     */
+    static final class Mix {
+        private final Map<Operation, Integer> weights;
+        private final Operation[] choices;
+
+        private Mix(Map<Operation, Integer> weights) {
+            this.weights = weights;
+            this.choices = weights.entrySet().stream()
+                    .flatMap(entry -> Collections.nCopies(entry.getValue(), entry.getKey()).stream())
+                    .toArray(Operation[]::new);
+        }
+
+        /**
+         * @param mix weights, e.g. sign-up=2,login=3,create-room=5,post-message=50,read-room=40.
+         */
+        static Mix parse(String mix) {
+            Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+            for (String part : mix.split(",")) {
+                String[] pair = part.trim().split("=");
+                if (pair.length != 2) {
+                    throw new IllegalArgumentException("Mix must look like name=weight,name=weight, not " + mix);
+                }
+                int weight = Integer.parseInt(pair[1].trim());
+                if (weight < 0) {
+                    throw new IllegalArgumentException("Weight of " + pair[0] + " must not be negative");
+                }
+                if (weight > 0) {
+                    weights.put(Operation.of(pair[0].trim()), weight);
+                }
+            }
+            if (weights.isEmpty()) {
+                throw new IllegalArgumentException("Mix must contain an operation with a positive weight");
+            }
+            return new Mix(weights);
+        }
+
+        Operation next(Random random) {
+            return choices[random.nextInt(choices.length)];
+        }
+
+        Map<Operation, Integer> getWeights() {
+            return weights;
+        }
+    }
+}
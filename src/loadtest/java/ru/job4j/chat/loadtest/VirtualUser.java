@@ -0,0 +1,172 @@
+package ru.job4j.chat.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A chat user: signs up, logs in, creates a room of their own and then sends
+ * requests of the mix, each at its scheduled time.
+ * Latency is counted from the scheduled time, not from the moment the request is sent,
+ * so a slow response delays the following requests and that delay is measured too
+ * instead of being hidden by a generator that waits for the server.
+ */
+final class VirtualUser implements Runnable {
+    private static final String JSON = "application/json";
+    private static final String PASSWORD = "load-test-password";
+
+    private final int index;
+    private final LoadTest.Run run;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Random random;
+    private final String name;
+    private int personId;
+    private String token;
+    private int signUps;
+    private int roomsCreated;
+    private int messages;
+
+    VirtualUser(int index, LoadTest.Run run) {
+        this.index = index;
+        this.run = run;
+        this.random = new Random(index);
+        this.name = run.getPrefix() + "-user-" + index;
+    }
+
+    /**
+     * Creates the account and the room of the user, these requests are not measured.
+     */
+    void setUp() throws IOException, InterruptedException {
+        personId = signUp(name);
+        login();
+        run.addRoom(createRoom());
+    }
+
+    @Override
+    public void run() {
+        for (long k = 0;; k++) {
+            long scheduled = run.scheduledTime(k, index);
+            if (scheduled >= run.getEnd()) {
+                return;
+            }
+            long wait;
+            while ((wait = scheduled - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            Operation operation = run.getMix().next(random);
+            EndpointStats stats = scheduled < run.getMeasureFrom() ? null : run.stats(operation);
+            try {
+                execute(operation);
+                if (stats != null) {
+                    stats.success(System.nanoTime() - scheduled);
+                }
+            } catch (UnexpectedStatusException e) {
+                if (stats != null) {
+                    stats.failure(String.valueOf(e.status));
+                }
+            } catch (IOException e) {
+                if (stats != null) {
+                    stats.failure(e.getClass().getSimpleName());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void execute(Operation operation) throws IOException, InterruptedException {
+        switch (operation) {
+            case SIGN_UP:
+                signUp(name + "-" + ++signUps);
+                break;
+            case LOGIN:
+                login();
+                break;
+            case CREATE_ROOM:
+                run.addRoom(createRoom());
+                break;
+            case POST_MESSAGE:
+                send(authorized(post("/message/", Map.of(
+                        "text", "Message " + ++messages + " from " + name,
+                        "roomId", run.randomRoom(random),
+                        "authorId", personId))), 201);
+                break;
+            case READ_ROOM:
+                send(authorized(request("/room/" + run.randomRoom(random) + "?recent=20").GET()), 200);
+                break;
+            default:
+                throw new IllegalStateException("Unknown operation " + operation);
+        }
+    }
+
+    private int signUp(String person) throws IOException, InterruptedException {
+        HttpResponse<String> response = send(post("/person/sign-up/", Map.of("name", person, "password", PASSWORD)), 201);
+        return id(response);
+    }
+
+    private void login() throws IOException, InterruptedException {
+        HttpResponse<String> response = send(post("/login", Map.of("name", name, "password", PASSWORD)), 200);
+        token = response.headers().firstValue("Authorization")
+                .orElseThrow(() -> new IOException("Login of " + name + " returned no token"));
+    }
+
+    private int createRoom() throws IOException, InterruptedException {
+        String room = name + "-room-" + ++roomsCreated;
+        return id(send(authorized(post("/room/", Map.of("name", room, "authorId", personId))), 201));
+    }
+
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder(URI.create(run.getUrl() + path))
+                .timeout(run.getTimeout());
+    }
+
+    private HttpRequest.Builder post(String path, Map<String, Object> body) throws IOException {
+        return request(path)
+                .header("Content-Type", JSON)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body)));
+    }
+
+    private HttpRequest.Builder authorized(HttpRequest.Builder request) {
+        return request.header("Authorization", token);
+    }
+
+    private HttpResponse<String> send(HttpRequest.Builder request, int expected)
+            throws IOException, InterruptedException {
+        HttpResponse<String> response = run.getClient().send(request.build(), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != expected) {
+            throw new UnexpectedStatusException(response.statusCode());
+        }
+        return response;
+    }
+
+    private int id(HttpResponse<String> response) throws IOException {
+        JsonNode id = objectMapper.readTree(response.body()).get("id");
+        if (id == null) {
+            throw new IOException("Response without id: " + response.body());
+        }
+        return id.asInt();
+    }
+
+    /**
+     * Response with another status than the operation expects.
+     */
+    static final class UnexpectedStatusException extends IOException {
+        private final int status;
+
+        UnexpectedStatusException(int status) {
+            super("Unexpected status " + status);
+            this.status = status;
+        }
+    }
+}
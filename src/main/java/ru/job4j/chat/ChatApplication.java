@@ -1,50 +1,20 @@
 package ru.job4j.chat;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
-import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.context.annotation.Bean;
-import org.springframework.http.HttpHeaders;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
-import org.springframework.security.crypto.password.PasswordEncoder;
-import org.springframework.web.client.RestTemplate;
-import org.springframework.web.context.annotation.RequestScope;
-import ru.job4j.chat.exception.RestTemplateResponseErrorHandler;
-
-import javax.servlet.http.HttpServletRequest;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import ru.job4j.chat.security.BoundedPasswordEncoder;
 
 @SpringBootApplication
+@EnableScheduling
 public class ChatApplication {
-    private final ObjectMapper objectMapper;
-
-    public ChatApplication(ObjectMapper objectMapper) {
-        this.objectMapper = objectMapper;
-    }
-
-    @Bean
-    @RequestScope
-    public RestTemplate restTemplate(HttpServletRequest inReq, RestTemplateBuilder restTemplateBuilder) {
-        final String authHeader =
-                inReq.getHeader(HttpHeaders.AUTHORIZATION);
-        final RestTemplate restTemplate = restTemplateBuilder
-                .errorHandler(new RestTemplateResponseErrorHandler(objectMapper))
-                .build();
-        if (authHeader != null && !authHeader.isEmpty()) {
-            restTemplate.getInterceptors().add(
-                    (outReq, bytes, clientHttpReqExec) -> {
-                        outReq.getHeaders().set(
-                                HttpHeaders.AUTHORIZATION, authHeader
-                        );
-                        return clientHttpReqExec.execute(outReq, bytes);
-                    });
-        }
-        return restTemplate;
-    }
-
-    @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    @Bean(destroyMethod = "close")
+    public BoundedPasswordEncoder passwordEncoder(@Value("${chat.bcrypt.strength:10}") int strength,
+                                           @Value("${chat.bcrypt.threads:2}") int threads,
+                                           @Value("${chat.bcrypt.queue-capacity:50}") int queueCapacity) {
+        return new BoundedPasswordEncoder(strength, threads, queueCapacity);
     }
 
     public static void main(String[] args) {
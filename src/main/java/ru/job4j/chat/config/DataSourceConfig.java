@@ -0,0 +1,69 @@
+package ru.job4j.chat.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read replicas, enabled by chat.datasource.routing.
+ * Replicas are listed in chat.datasource.replica-urls and share the driver
+ * and the credentials of spring.datasource. Without replicas every query goes to the primary.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "chat.datasource.routing", havingValue = "true")
+public class DataSourceConfig {
+
+    @Bean
+    public DataSource dataSource(DataSourceProperties properties,
+                                 @Value("${chat.datasource.replica-urls:}") List<String> replicaUrls,
+                                 ObjectProvider<MeterRegistry> meterRegistry) {
+        HikariDataSource primary = pool(properties, properties.determineUrl(), "primary", meterRegistry);
+        List<DataSource> replicas = new ArrayList<>();
+        for (String url : replicaUrls) {
+            replicas.add(pool(properties, url, "replica-" + replicas.size(), meterRegistry));
+        }
+        ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(primary, replicas);
+        routing.afterPropertiesSet();
+        return new RoutingProxy(routing);
+    }
+
+    private static HikariDataSource pool(DataSourceProperties properties, String url, String name,
+                                         ObjectProvider<MeterRegistry> meterRegistry) {
+        HikariDataSource pool = properties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .url(url)
+                .build();
+        pool.setPoolName(name);
+        /* Spring Boot binds only the pool it can unwrap, so every pool registers itself */
+        meterRegistry.ifAvailable(registry -> pool.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry)));
+        return pool;
+    }
+
+    /**
+     * Defers taking a connection until the first statement, when the transaction
+     * is already known to be read-only. Closed by the context, which closes the pools.
+     */
+    private static class RoutingProxy extends LazyConnectionDataSourceProxy implements Closeable {
+        RoutingProxy(ReplicaRoutingDataSource routing) {
+            super(routing);
+        }
+
+        @Override
+        public void close() throws IOException {
+            ((Closeable) obtainTargetDataSource()).close();
+        }
+    }
+}
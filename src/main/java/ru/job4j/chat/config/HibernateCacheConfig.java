@@ -0,0 +1,73 @@
+package ru.job4j.chat.config;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cache.spi.RegionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import java.net.URI;
+import java.time.Duration;
+import java.util.OptionalLong;
+import java.util.UUID;
+
+/**
+ * Opt-in second-level and query cache of Hibernate, enabled by chat.cache.enabled.
+ * Every region is a bounded Caffeine cache sized by chat.cache.[region].max-size
+ * with entries expiring after chat.cache.[region].ttl.
+ * Regions are role, person, room and query, the last one holds query results.
+ */
+@Configuration(proxyBeanMethods = false)
+public class HibernateCacheConfig {
+    private static final String[] ENTITY_REGIONS = {"role", "person", "room"};
+    private static final String QUERY_REGION = "query";
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "chat.cache.enabled", havingValue = "true")
+    public CacheManager hibernateCacheManager(Environment environment) {
+        CacheManager cacheManager = Caching.getCachingProvider(CaffeineCachingProvider.class.getName())
+                .getCacheManager(URI.create("chat-hibernate-" + UUID.randomUUID()), getClass().getClassLoader());
+        for (String region : ENTITY_REGIONS) {
+            cacheManager.createCache(region, configuration(environment, region));
+        }
+        cacheManager.createCache(RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME,
+                configuration(environment, QUERY_REGION));
+        /* timestamps of the last table changes must outlive every cached query result */
+        cacheManager.createCache(RegionFactory.DEFAULT_UPDATE_TIMESTAMPS_REGION_UNQUALIFIED_NAME,
+                new CaffeineConfiguration<>());
+        return cacheManager;
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer hibernateCacheCustomizer(ObjectProvider<CacheManager> hibernateCacheManager) {
+        return properties -> {
+            CacheManager cacheManager = hibernateCacheManager.getIfAvailable();
+            /* Hibernate picks up hibernate-jcache by itself unless the cache is switched off explicitly */
+            properties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, cacheManager != null);
+            properties.put(AvailableSettings.USE_QUERY_CACHE, cacheManager != null);
+            if (cacheManager != null) {
+                properties.put(AvailableSettings.CACHE_REGION_FACTORY, "jcache");
+                properties.put(ConfigSettings.CACHE_MANAGER, cacheManager);
+                properties.put(ConfigSettings.MISSING_CACHE_STRATEGY, "fail");
+                properties.putIfAbsent(AvailableSettings.GENERATE_STATISTICS, true);
+            }
+        };
+    }
+
+    private static CaffeineConfiguration<Object, Object> configuration(Environment environment, String region) {
+        long maxSize = environment.getProperty("chat.cache." + region + ".max-size", Long.class, 10000L);
+        Duration ttl = environment.getProperty("chat.cache." + region + ".ttl", Duration.class, Duration.ofMinutes(10));
+        CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+        configuration.setMaximumSize(OptionalLong.of(maxSize));
+        configuration.setExpireAfterWrite(OptionalLong.of(ttl.toNanos()));
+        return configuration;
+    }
+}
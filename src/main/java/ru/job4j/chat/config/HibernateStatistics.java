@@ -0,0 +1,100 @@
+package ru.job4j.chat.config;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * Hibernate statistics over JMX, mostly to watch the hit ratio of the second-level cache.
+ * Statistics are collected when hibernate.generate_statistics is set, which the cache turns on,
+ * and may be switched on and off at runtime.
+ */
+@Component
+@ManagedResource(objectName = "ru.job4j.chat:name=HibernateStatistics")
+public class HibernateStatistics {
+    private final Statistics statistics;
+
+    public HibernateStatistics(EntityManagerFactory entityManagerFactory) {
+        this.statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @ManagedAttribute
+    public boolean isEnabled() {
+        return statistics.isStatisticsEnabled();
+    }
+
+    @ManagedAttribute
+    public void setEnabled(boolean enabled) {
+        statistics.setStatisticsEnabled(enabled);
+    }
+
+    @ManagedAttribute
+    public long getSecondLevelCacheHitCount() {
+        return statistics.getSecondLevelCacheHitCount();
+    }
+
+    @ManagedAttribute
+    public long getSecondLevelCacheMissCount() {
+        return statistics.getSecondLevelCacheMissCount();
+    }
+
+    @ManagedAttribute
+    public long getSecondLevelCachePutCount() {
+        return statistics.getSecondLevelCachePutCount();
+    }
+
+    @ManagedAttribute
+    public double getSecondLevelCacheHitRatio() {
+        return ratio(statistics.getSecondLevelCacheHitCount(), statistics.getSecondLevelCacheMissCount());
+    }
+
+    @ManagedAttribute
+    public long getQueryCacheHitCount() {
+        return statistics.getQueryCacheHitCount();
+    }
+
+    @ManagedAttribute
+    public long getQueryCacheMissCount() {
+        return statistics.getQueryCacheMissCount();
+    }
+
+    @ManagedAttribute
+    public double getQueryCacheHitRatio() {
+        return ratio(statistics.getQueryCacheHitCount(), statistics.getQueryCacheMissCount());
+    }
+
+    @ManagedAttribute
+    public long getQueryExecutionCount() {
+        return statistics.getQueryExecutionCount();
+    }
+
+    @ManagedAttribute
+    public long getPrepareStatementCount() {
+        return statistics.getPrepareStatementCount();
+    }
+
+    /**
+     * @param region role, person, room or default-query-results-region.
+     * @return hit ratio of the region, 0 if it was never read.
+     */
+    @ManagedOperation
+    public double regionHitRatio(String region) {
+        CacheRegionStatistics regionStatistics = statistics.getDomainDataRegionStatistics(region);
+        return ratio(regionStatistics.getHitCount(), regionStatistics.getMissCount());
+    }
+
+    @ManagedOperation
+    public void clear() {
+        statistics.clear();
+    }
+
+    private static double ratio(long hits, long misses) {
+        return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+    }
+}
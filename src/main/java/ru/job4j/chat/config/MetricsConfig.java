@@ -0,0 +1,62 @@
+package ru.job4j.chat.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.boot.actuate.metrics.web.servlet.WebMvcTagsContributor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.method.HandlerMethod;
+import ru.job4j.chat.security.PrincipalCache;
+import ru.job4j.chat.service.ReferenceValidator;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Metrics of the application in addition to the ones of Spring Boot,
+ * which already cover the Hikari pool and Hibernate statistics.
+ */
+@Configuration(proxyBeanMethods = false)
+public class MetricsConfig {
+    private static final Tag NO_HANDLER = Tag.of("handler", "none");
+
+    /**
+     * Tags http.server.requests with the controller method that served the request,
+     * e.g. handler="MessageController.create", so latency can be compared per method.
+     */
+    @Bean
+    public WebMvcTagsContributor handlerTagsContributor() {
+        return new WebMvcTagsContributor() {
+            @Override
+            public Iterable<Tag> getTags(HttpServletRequest request, HttpServletResponse response,
+                                         Object handler, Throwable exception) {
+                if (handler instanceof HandlerMethod) {
+                    HandlerMethod method = (HandlerMethod) handler;
+                    return Tags.of("handler", method.getBeanType().getSimpleName() + "." + method.getMethod().getName());
+                }
+                return Tags.of(NO_HANDLER);
+            }
+
+            @Override
+            public Iterable<Tag> getLongRequestTags(HttpServletRequest request, Object handler) {
+                return Tags.empty();
+            }
+        };
+    }
+
+    /**
+     * Binds the application caches once all singletons exist. They are not MeterBinder beans,
+     * the registry is created together with the data source and the caches depend on repositories.
+     */
+    @Bean
+    public SmartInitializingSingleton cacheMetrics(MeterRegistry registry,
+                                                   PrincipalCache principalCache,
+                                                   ReferenceValidator referenceValidator) {
+        return () -> {
+            principalCache.monitor(registry);
+            referenceValidator.monitor(registry);
+        };
+    }
+}
@@ -0,0 +1,35 @@
+package ru.job4j.chat.controller;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Parses the fields parameter of sparse fieldset requests, e.g. ?fields=id,name.
+ */
+final class Fields {
+    private Fields() {
+    }
+
+    /**
+     * @param fields comma-separated field names.
+     * @param allowed fields the endpoint may return.
+     * @return requested fields in the requested order, without duplicates.
+     */
+    static List<String> parse(String fields, List<String> allowed) {
+        List<String> result = Arrays.stream(fields.split(","))
+                .map(String::trim)
+                .filter(field -> !field.isEmpty())
+                .distinct()
+                .collect(Collectors.toList());
+        if (result.isEmpty()) {
+            throw new IllegalArgumentException("Fields must not be empty, allowed fields are " + allowed);
+        }
+        for (String field : result) {
+            if (!allowed.contains(field)) {
+                throw new IllegalArgumentException("Unknown field " + field + ", allowed fields are " + allowed);
+            }
+        }
+        return result;
+    }
+}
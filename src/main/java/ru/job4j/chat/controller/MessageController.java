@@ -1,7 +1,10 @@
 package ru.job4j.chat.controller;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -11,51 +14,211 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.WebAsyncTask;
 import org.springframework.web.server.ResponseStatusException;
 import ru.job4j.chat.domain.Message;
-import ru.job4j.chat.domain.Person;
 import ru.job4j.chat.domain.Room;
+import ru.job4j.chat.domain.RoomPurge;
 import ru.job4j.chat.dto.MessageDTO;
+import ru.job4j.chat.dto.MessagePage;
+import ru.job4j.chat.dto.VersionDTO;
+import ru.job4j.chat.event.MessageEvent;
 import ru.job4j.chat.repository.MessageRepository;
+import ru.job4j.chat.service.MessageHistory;
+import ru.job4j.chat.service.MessageIndex;
+import ru.job4j.chat.service.MessageWriter;
+import ru.job4j.chat.service.ReadMarkers;
+import ru.job4j.chat.service.ReferenceValidator;
+import ru.job4j.chat.service.RoomPurger;
 
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Subquery;
+import javax.servlet.http.HttpServletResponse;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Transactional
 @RestController
 @RequestMapping("/message")
 public class MessageController {
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 500;
+    private static final String NDJSON = "application/x-ndjson";
+    private static final int MAX_BATCH_SIZE = 10_000;
+    private static final int DEFAULT_SEARCH_LIMIT = 20;
+    private static final int MAX_SEARCH_LIMIT = 100;
+    private static final List<String> FIELDS = List.of("id", "text", "created", "roomId", "authorId");
+
     private final MessageRepository messageRepository;
-    private final RestTemplate restTemplate;
+    private final ReferenceValidator referenceValidator;
+    private final MessageHistory messageHistory;
+    private final MessageWriter messageWriter;
+    private final RoomPurger roomPurger;
+    private final ReadMarkers readMarkers;
+    private final MessageIndex messageIndex;
 
-    public MessageController(MessageRepository messageRepository, RestTemplate restTemplate) {
+    public MessageController(MessageRepository messageRepository,
+                             ReferenceValidator referenceValidator,
+                             MessageHistory messageHistory,
+                             MessageWriter messageWriter,
+                             RoomPurger roomPurger,
+                             ReadMarkers readMarkers,
+                             MessageIndex messageIndex) {
         this.messageRepository = messageRepository;
-        this.restTemplate = restTemplate;
+        this.referenceValidator = referenceValidator;
+        this.messageHistory = messageHistory;
+        this.messageWriter = messageWriter;
+        this.roomPurger = roomPurger;
+        this.readMarkers = readMarkers;
+        this.messageIndex = messageIndex;
+    }
+
+    /**
+     * Finds messages that contain all words of the query, best matches first.
+     * Messages of deleted rooms are skipped while the rooms are being purged.
+     * @param q words to search for.
+     * @param roomId room to search in, all rooms by default.
+     * @param limit number of results, at most 100.
+     * @return matching messages.
+     */
+    @GetMapping("/search")
+    @Transactional(readOnly = true)
+    public ResponseEntity<List<Message>> search(@RequestParam String q,
+                                                @RequestParam(required = false) Integer roomId,
+                                                @RequestParam(defaultValue = "" + DEFAULT_SEARCH_LIMIT) int limit) {
+        if (limit < 1 || limit > MAX_SEARCH_LIMIT) {
+            throw new IllegalArgumentException("Limit must be from 1 to " + MAX_SEARCH_LIMIT);
+        }
+        if (roomId != null) {
+            checkRoomId(roomId);
+        }
+        List<Message> found = messageIndex.search(q, roomId, limit);
+        Set<Integer> rooms = referenceValidator.existingRooms(
+                found.stream().map(Message::getRoomId).collect(Collectors.toSet()));
+        return ResponseEntity.ok(found.stream()
+                .filter(message -> rooms.contains(message.getRoomId()))
+                .collect(Collectors.toList()));
+    }
+
+    @GetMapping(value = "/{id}", params = "fields")
+    @Transactional(readOnly = true)
+    public ResponseEntity<Map<String, Object>> findByIdFields(@PathVariable int id, @RequestParam String fields) {
+        List<Map<String, Object>> messages = messageRepository.findFields(Message.class, Fields.parse(fields, FIELDS),
+                byIdInVisibleRoom(id), Pageable.unpaged());
+        if (messages.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Message with id = " + id + " not found");
+        }
+        return ResponseEntity.ok(messages.get(0));
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<Message> findById(@PathVariable int id) {
+    @Transactional(readOnly = true)
+    public ResponseEntity<Message> findById(@PathVariable int id, WebRequest request) {
+        VersionDTO version = messageRepository.findVersionById(id);
+        if (version.getCount() > 0 && request.checkNotModified(version.toEtag())) {
+            return null;
+        }
         Message message = messageRepository.findById(id)
                 .orElseThrow(() -> new ResponseStatusException(
                         HttpStatus.NOT_FOUND, "Message with id = " + id + " not found"
                 ));
+        checkRoomId(message.getRoomId());
         return ResponseEntity.ok(message);
     }
 
+    /**
+     * Returns room messages from newest to oldest, one page at a time.
+     * Paging continues into the archive when the messages in the database run out.
+     * @param roomId room id.
+     * @param before cursor from the previous page, or nothing for the newest messages.
+     * @param limit page size, at most 500.
+     * @return page of messages with the cursor of the next (older) page.
+     */
     @GetMapping("/roomId/{roomId}")
-    public ResponseEntity<List<Message>> findAllRoomMessages(@PathVariable int roomId) {
-        return ResponseEntity.ok(messageRepository.findByRoomId(roomId));
+    @Transactional(readOnly = true)
+    public ResponseEntity<MessagePage> findAllRoomMessages(@PathVariable int roomId,
+                                                           @RequestParam(required = false) String before,
+                                                           @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int limit) {
+        checkLimit(limit);
+        checkRoomId(roomId);
+        Message cursor = before == null ? null : decodeCursor(before);
+        List<Message> messages = messageHistory.findBefore(roomId, cursor, limit + 1);
+        String nextCursor = null;
+        if (messages.size() > limit) {
+            messages = messages.subList(0, limit);
+            nextCursor = encodeCursor(messages.get(limit - 1));
+        }
+        return ResponseEntity.ok(new MessagePage(messages, nextCursor));
     }
 
+    /**
+     * Streams the whole history of a room including archived messages, oldest first, one JSON message per line.
+     * The export has its own async timeout, see MessageHistory.getExportTimeout.
+     * @param roomId room id.
+     * @param response response the history is written to.
+     * @return task that writes the body after the handler returns.
+     */
+    @GetMapping(value = "/roomId/{roomId}/export", produces = NDJSON)
+    @Transactional(readOnly = true)
+    public WebAsyncTask<Void> exportRoomMessages(@PathVariable int roomId, HttpServletResponse response) {
+        checkRoomId(roomId);
+        response.setContentType(NDJSON);
+        return new WebAsyncTask<>(messageHistory.getExportTimeout().toMillis(), () -> {
+            messageHistory.exportRoom(roomId, response.getOutputStream());
+            return null;
+        });
+    }
+
+    /**
+     * Runs outside of a transaction: MessageWriter saves the message in its own one,
+     * possibly together with messages of other requests.
+     */
     @PostMapping("/")
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public ResponseEntity<Message> create(@RequestBody Message message) {
         checkText(message.getText());
-        Person author = restTemplate.getForObject("http://localhost:8080/person/" + message.getAuthorId(), Person.class);
-        Room room = restTemplate.getForObject("http://localhost:8080/room/" + message.getRoomId(), Room.class);
+        checkAuthorId(message.getAuthorId());
+        checkRoomId(message.getRoomId());
+        Message saved = messageWriter.create(message);
         return new ResponseEntity<>(
-                messageRepository.save(message),
+                saved,
+                HttpStatus.CREATED
+        );
+    }
+
+    /**
+     * Creates many messages at once. Rooms and authors are checked as sets
+     * and rows are inserted with JDBC batching in a single transaction.
+     * @param messages new messages, at most 10 000.
+     * @return created messages with ids.
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<List<Message>> createAll(@RequestBody List<Message> messages) {
+        if (messages.isEmpty() || messages.size() > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("Batch must contain from 1 to " + MAX_BATCH_SIZE + " messages");
+        }
+        messages.forEach(message -> {
+            checkText(message.getText());
+            message.setId(0);
+        });
+        referenceValidator.checkPersonsExist(
+                messages.stream().map(Message::getAuthorId).collect(Collectors.toSet()));
+        referenceValidator.checkRoomsExist(
+                messages.stream().map(Message::getRoomId).collect(Collectors.toSet()));
+        List<Message> saved = messageRepository.saveAllInBatches(messages);
+        saved.forEach(message -> publish(MessageEvent.Type.CREATED, message));
+        return new ResponseEntity<>(
+                saved,
                 HttpStatus.CREATED
         );
     }
@@ -68,7 +231,7 @@ public class MessageController {
                         HttpStatus.NOT_FOUND, "Message with id = " + id + " not found"
                 ));
         message.setText(text);
-        messageRepository.save(message);
+        publish(MessageEvent.Type.UPDATED, messageRepository.save(message));
         return ResponseEntity.ok().build();
     }
 
@@ -82,6 +245,7 @@ public class MessageController {
         LocalDateTime created = patch.getCreated();
         int roomId = patch.getRoomId();
         int authorId = patch.getAuthorId();
+        Message before = copyOf(message);
         if (text != null) {
             checkText(text);
             message.setText(text);
@@ -98,21 +262,51 @@ public class MessageController {
             checkAuthorId(authorId);
             message.setAuthorId(authorId);
         }
-        return ResponseEntity.ok(messageRepository.save(message));
+        Message saved = messageRepository.save(message);
+        if (saved.getRoomId() == before.getRoomId()) {
+            publish(MessageEvent.Type.UPDATED, saved);
+        } else {
+            publish(MessageEvent.Type.DELETED, before);
+            publish(MessageEvent.Type.CREATED, saved);
+        }
+        return ResponseEntity.ok(saved);
     }
 
     @DeleteMapping("/{id}")
     public ResponseEntity<Void> delete(@PathVariable int id) {
-        Message message = new Message();
-        message.setId(id);
-        messageRepository.delete(message);
+        messageRepository.findById(id).ifPresent(message -> {
+            messageRepository.delete(message);
+            publish(MessageEvent.Type.DELETED, message);
+        });
         return ResponseEntity.ok().build();
     }
 
+    /**
+     * Removes all current messages of the room in the background.
+     * @param roomId room id.
+     * @return 202 with the purge, its progress is available at /room/purge/{purgeId}.
+     */
     @DeleteMapping("/roomId/{roomId}")
-    public ResponseEntity<Void> deleteAllRoomMessages(@PathVariable int roomId) {
-        messageRepository.deleteAllByRoomId(roomId);
-        return ResponseEntity.ok().build();
+    public ResponseEntity<RoomPurge> deleteAllRoomMessages(@PathVariable int roomId) {
+        checkRoomId(roomId);
+        RoomPurge purge = roomPurger.schedule(roomId, false);
+        readMarkers.clearRoom(roomId);
+        return ResponseEntity.accepted()
+                .location(URI.create("/room/purge/" + purge.getId()))
+                .body(purge);
+    }
+
+    private void publish(MessageEvent.Type type, Message message) {
+        messageWriter.publish(type, message);
+    }
+
+    private Message copyOf(Message message) {
+        Message copy = new Message(message.getText());
+        copy.setId(message.getId());
+        copy.setCreated(message.getCreated());
+        copy.setRoomId(message.getRoomId());
+        copy.setAuthorId(message.getAuthorId());
+        return copy;
     }
 
     private void checkText(String text) {
@@ -127,11 +321,48 @@ public class MessageController {
         }
     }
 
+    private void checkLimit(int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Limit must be from 1 to " + MAX_PAGE_SIZE);
+        }
+    }
+
+    private String encodeCursor(Message message) {
+        String cursor = message.getCreated() + "_" + message.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Message decodeCursor(String cursor) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("_");
+            Message message = new Message();
+            message.setCreated(LocalDateTime.parse(parts[0]));
+            message.setId(Integer.parseInt(parts[1]));
+            return message;
+        } catch (IllegalArgumentException | DateTimeParseException | ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid cursor " + cursor);
+        }
+    }
+
+    /**
+     * Messages of a deleted room stay in the table until the purge reaches them.
+     */
+    private static Specification<Message> byIdInVisibleRoom(int id) {
+        return (root, query, builder) -> {
+            Subquery<Integer> room = query.subquery(Integer.class);
+            Root<Room> rooms = room.from(Room.class);
+            room.select(rooms.get("id")).where(
+                    builder.equal(rooms.get("id"), root.get("roomId")),
+                    builder.isFalse(rooms.get("deleted")));
+            return builder.and(builder.equal(root.get("id"), id), builder.exists(room));
+        };
+    }
+
     private void checkRoomId(int roomId) {
-        restTemplate.getForObject("http://localhost:8080/room/" + roomId, Room.class);
+        referenceValidator.checkRoomExists(roomId);
     }
 
     private void checkAuthorId(int authorId) {
-        restTemplate.getForObject("http://localhost:8080/person/" + authorId, Person.class);
+        referenceValidator.checkPersonExists(authorId);
     }
 }
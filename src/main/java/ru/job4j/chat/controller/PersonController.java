@@ -1,10 +1,12 @@
 package ru.job4j.chat.controller;
 
-import org.springframework.core.ParameterizedTypeReference;
-import org.springframework.http.HttpMethod;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -14,151 +16,249 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.server.ResponseStatusException;
 import ru.job4j.chat.domain.Person;
 import ru.job4j.chat.domain.Role;
 import ru.job4j.chat.domain.Room;
 import ru.job4j.chat.dto.PersonDTO;
+import ru.job4j.chat.dto.VersionDTO;
+import ru.job4j.chat.exception.ThereIsNoRoleWithThisNameException;
 import ru.job4j.chat.repository.PersonRepository;
+import ru.job4j.chat.repository.RoleRepository;
+import ru.job4j.chat.repository.RoomRepository;
+import ru.job4j.chat.security.PrincipalCache;
+import ru.job4j.chat.service.PersonRemover;
+import ru.job4j.chat.service.PersonWriter;
+import ru.job4j.chat.service.ReferenceValidator;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
 
 @Transactional
 @RestController
 @RequestMapping("/person")
 public class PersonController {
+    private static final String USER_ROLE = "ROLE_USER";
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 500;
+    private static final String ROOMS = "rooms";
+    /**
+     * Fields of sparse fieldsets, the password is never returned.
+     */
+    private static final List<String> FIELDS = List.of("id", "name", "created", "roleId", ROOMS);
+
     private final PersonRepository personRepository;
-    private final RestTemplate restTemplate;
-    private final PasswordEncoder encoder;
+    private final RoleRepository roleRepository;
+    private final RoomRepository roomRepository;
+    private final PersonWriter personWriter;
+    private final ReferenceValidator referenceValidator;
+    private final PrincipalCache principalCache;
+    private final PersonRemover personRemover;
 
-    public PersonController(PersonRepository personRepository, RestTemplate restTemplate, PasswordEncoder encoder) {
+    public PersonController(PersonRepository personRepository,
+                            RoleRepository roleRepository,
+                            RoomRepository roomRepository,
+                            PersonWriter personWriter,
+                            ReferenceValidator referenceValidator,
+                            PrincipalCache principalCache,
+                            PersonRemover personRemover) {
         this.personRepository = personRepository;
-        this.restTemplate = restTemplate;
-        this.encoder = encoder;
+        this.roleRepository = roleRepository;
+        this.roomRepository = roomRepository;
+        this.personWriter = personWriter;
+        this.referenceValidator = referenceValidator;
+        this.principalCache = principalCache;
+        this.personRemover = personRemover;
     }
 
+    /**
+     * Returns one page of persons ordered by id, each with the rooms they created.
+     * Rooms of the whole page are loaded by a single query.
+     * @param page page number starting from 0.
+     * @param size page size, at most 500.
+     * @return persons of the page.
+     */
     @GetMapping("/")
-    public ResponseEntity<List<Person>> findAll() {
-        List<Person> people = StreamSupport.stream(
-                this.personRepository.findAll().spliterator(), false
-        )
-                .map(person -> {
-                    List<Room> roomCreatedByPerson = restTemplate.exchange(
-                            "http://localhost:8080/room/authorId/" + person.getId(),
-                            HttpMethod.GET, null, new ParameterizedTypeReference<List<Room>>() {
-                            }
-                    ).getBody();
-                    person.setRooms(roomCreatedByPerson);
-                    return person;
-                })
-                .collect(Collectors.toList());
+    @Transactional(readOnly = true)
+    public ResponseEntity<List<Person>> findAll(@RequestParam(defaultValue = "0") int page,
+                                                @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int size) {
+        checkPage(page, size);
+        List<Person> people = personRepository.findAllBy(PageRequest.of(page, size, Sort.by("id")));
+        if (!people.isEmpty()) {
+            Map<Integer, List<Room>> roomsByAuthor = roomRepository.findByAuthorIdIn(
+                    people.stream().map(Person::getId).collect(Collectors.toList())
+            ).stream().collect(Collectors.groupingBy(Room::getAuthorId));
+            people.forEach(person -> person.setRooms(roomsByAuthor.getOrDefault(person.getId(), List.of())));
+        }
         return ResponseEntity.ok(people);
     }
 
+    /**
+     * Sparse fieldset of a page of persons, e.g. ?fields=id,name.
+     * Only the requested columns are selected, rooms are read only when requested.
+     * @param fields comma-separated fields: id, name, created, roleId, rooms.
+     * @param page page number starting from 0.
+     * @param size page size, at most 500.
+     * @return requested fields of the persons of the page.
+     */
+    @GetMapping(value = "/", params = "fields")
+    @Transactional(readOnly = true)
+    public ResponseEntity<List<Map<String, Object>>> findAllFields(@RequestParam String fields,
+                                                                   @RequestParam(defaultValue = "0") int page,
+                                                                   @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int size) {
+        checkPage(page, size);
+        return ResponseEntity.ok(findFields(Fields.parse(fields, FIELDS), null, PageRequest.of(page, size, Sort.by("id"))));
+    }
+
+    @GetMapping(value = "/{id}", params = "fields")
+    @Transactional(readOnly = true)
+    public ResponseEntity<Map<String, Object>> findByIdFields(@PathVariable int id, @RequestParam String fields) {
+        List<Map<String, Object>> people = findFields(Fields.parse(fields, FIELDS),
+                (root, query, builder) -> builder.equal(root.get("id"), id), Pageable.unpaged());
+        if (people.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Person with id = " + id + " not found");
+        }
+        return ResponseEntity.ok(people.get(0));
+    }
+
+    /**
+     * Returns the person with the rooms they created.
+     * The ETag is built from versions of the person and of the rooms, without loading them.
+     * @param id person id.
+     * @return person with rooms, or 304 if it matches If-None-Match.
+     */
     @GetMapping("/{id}")
-    public ResponseEntity<Person> findById(@PathVariable int id) {
+    @Transactional(readOnly = true)
+    public ResponseEntity<Person> findById(@PathVariable int id, WebRequest request) {
+        VersionDTO version = personRepository.findVersionById(id);
+        if (version.getCount() > 0
+                && request.checkNotModified(version.plus(roomRepository.findVersionByAuthorId(id)).toEtag())) {
+            return null;
+        }
         Person person = this.personRepository.findById(id)
                 .orElseThrow(() -> new ResponseStatusException(
                         HttpStatus.NOT_FOUND, "Person with id = " + id + " not found"
                 ));
-        List<Room> roomCreatedByPerson = restTemplate.exchange(
-                "http://localhost:8080/room/authorId/" + person.getId(),
-                HttpMethod.GET, null, new ParameterizedTypeReference<List<Room>>() {
-                }
-        ).getBody();
-        person.setRooms(roomCreatedByPerson);
+        person.setRooms(roomRepository.findByAuthorId(id));
         return new ResponseEntity<Person>(person, HttpStatus.OK);
     }
 
     /**
      * Creates person with default Role.
+     * Runs without a transaction, the password is hashed before one starts, see PersonWriter.
      * @param person new person
      * @return person with id. Person has default Role (USER).
      */
     @PostMapping({"/", "/sign-up/"})
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public ResponseEntity<Person> create(@RequestBody Person person) {
         checkName(person.getName());
         checkPassword(person.getPassword());
-        Role userRole = restTemplate.getForObject("http://localhost:8080/role/name/ROLE_USER", Role.class);
+        Role userRole = roleRepository.findByName(USER_ROLE)
+                .orElseThrow(() -> new ThereIsNoRoleWithThisNameException("There is no role named " + USER_ROLE));
         person.setRoleId(userRole.getId());
-        person.setPassword(encoder.encode(person.getPassword()));
         return new ResponseEntity<Person>(
-                this.personRepository.save(person),
+                personWriter.create(person),
                 HttpStatus.CREATED
         );
     }
 
     /**
      * Updates person's properties except property roleId.
+     * Runs without a transaction, the password is hashed before one starts, see PersonWriter.
      * @param person person with new properties.
      * @return status of operation.
      */
     @PutMapping("/")
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public ResponseEntity<Void> update(@RequestBody Person person) {
         checkName(person.getName());
         checkPassword(person.getPassword());
-        Person personInDb = restTemplate.getForObject("http://localhost:8080/person/" + person.getId(), Person.class);
-        person.setRoleId(personInDb.getRoleId());
-        person.setPassword(encoder.encode(person.getPassword()));
-        this.personRepository.save(person);
+        personWriter.update(person);
         return ResponseEntity.ok().build();
     }
 
     @PutMapping("/{id}/roleId/")
     public ResponseEntity<Void> changeRole(@PathVariable int id, @RequestBody int roleId) {
-        Role roleWithId = restTemplate.getForObject("http://localhost:8080/role/" + roleId, Role.class);
+        checkRoleId(roleId);
         Person person = personRepository.findById(id)
                 .orElseThrow(() -> new ResponseStatusException(
                         HttpStatus.NOT_FOUND, "Person with id = " + id + " not found"
                 ));
-        person.setRoleId(roleWithId.getId());
+        person.setRoleId(roleId);
         personRepository.save(person);
+        principalCache.evict(person.getName());
         return ResponseEntity.ok().build();
     }
 
+    /**
+     * Changes the fields that are set in the patch.
+     * Runs without a transaction, the password is hashed before one starts, see PersonWriter.
+     * @param id person id.
+     * @param patch new values.
+     * @return changed person.
+     */
     @PatchMapping("/{id}")
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public ResponseEntity<Person> changeSomeFields(@PathVariable int id, @RequestBody PersonDTO patch) {
-        Person person = this.personRepository.findById(id)
-                .orElseThrow(() -> new ResponseStatusException(
-                        HttpStatus.NOT_FOUND, "Person with id = " + id + " not found"
-                ));
-        String name = patch.getName();
-        String password = patch.getPassword();
-        LocalDateTime created = patch.getCreated();
-        int roleId = patch.getRoleId();
-        if (name != null) {
-            checkName(name);
-            person.setName(name);
+        if (patch.getName() != null) {
+            checkName(patch.getName());
         }
-        if (password != null) {
-            checkPassword(password);
-            person.setPassword(encoder.encode(password));
+        if (patch.getPassword() != null) {
+            checkPassword(patch.getPassword());
         }
-        if (created != null) {
-            checkCreated(created);
-            person.setCreated(created);
+        if (patch.getCreated() != null) {
+            checkCreated(patch.getCreated());
         }
-        if (roleId != 0) {
-            checkRoleId(roleId);
-            person.setRoleId(roleId);
+        if (patch.getRoleId() != 0) {
+            checkRoleId(patch.getRoleId());
         }
-        return ResponseEntity.ok(personRepository.save(person));
+        return ResponseEntity.ok(personWriter.patch(id, patch));
     }
 
+    /**
+     * Deletes the person with all their rooms, messages of these rooms and read markers.
+     * Everything is removed by a few bulk statements in one transaction.
+     * @param id person id.
+     * @return status of operation.
+     */
     @DeleteMapping("/{id}")
     public ResponseEntity<Void> delete(@PathVariable int id) {
-        Person person = new Person();
-        person.setId(id);
-        restTemplate.delete("http://localhost:8080/room/authorId/" + person.getId());
-        this.personRepository.delete(person);
+        personRemover.remove(id);
         return ResponseEntity.ok().build();
     }
 
+    /**
+     * Rooms are not a column, they are read by one query for all persons
+     * and need the person id, which is removed again unless it was requested.
+     */
+    private List<Map<String, Object>> findFields(List<String> fields, Specification<Person> where, Pageable pageable) {
+        List<String> columns = fields.stream().filter(field -> !ROOMS.equals(field)).collect(Collectors.toList());
+        boolean withRooms = fields.contains(ROOMS);
+        boolean withId = columns.contains("id");
+        if (withRooms && !withId) {
+            columns.add("id");
+        }
+        List<Map<String, Object>> people = personRepository.findFields(Person.class, columns, where, pageable);
+        if (withRooms && !people.isEmpty()) {
+            Map<Integer, List<Room>> roomsByAuthor = roomRepository.findByAuthorIdIn(
+                    people.stream().map(person -> (Integer) person.get("id")).collect(Collectors.toList())
+            ).stream().collect(Collectors.groupingBy(Room::getAuthorId));
+            people.forEach(person -> {
+                person.put(ROOMS, roomsByAuthor.getOrDefault((Integer) person.get("id"), List.of()));
+                if (!withId) {
+                    person.remove("id");
+                }
+            });
+        }
+        return people;
+    }
+
     private void checkName(String name) {
         if (name == null || name.isEmpty()) {
             throw new IllegalArgumentException("Person's name must not be empty");
@@ -168,6 +268,15 @@ public class PersonController {
         }
     }
 
+    private void checkPage(int page, int size) {
+        if (page < 0) {
+            throw new IllegalArgumentException("Page must not be negative");
+        }
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Size must be from 1 to " + MAX_PAGE_SIZE);
+        }
+    }
+
     private void checkPassword(String password) {
         if (password == null || password.length() < 5) {
             throw new IllegalArgumentException("Password must be more than 4 characters");
@@ -181,6 +290,6 @@ public class PersonController {
     }
 
     private void checkRoleId(int roleId) {
-        restTemplate.getForObject("http://localhost:8080/role/" + roleId, Role.class);
+        referenceValidator.checkRoleExists(roleId);
     }
 }
@@ -0,0 +1,49 @@
+package ru.job4j.chat.controller;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+import ru.job4j.chat.domain.ReadMarker;
+import ru.job4j.chat.service.ReadMarkers;
+import ru.job4j.chat.service.ReferenceValidator;
+
+import java.security.Principal;
+import java.util.List;
+
+@RestController
+public class ReadMarkerController {
+    private final ReadMarkers readMarkers;
+    private final ReferenceValidator referenceValidator;
+
+    public ReadMarkerController(ReadMarkers readMarkers, ReferenceValidator referenceValidator) {
+        this.readMarkers = readMarkers;
+        this.referenceValidator = referenceValidator;
+    }
+
+    /**
+     * Marks the room as read by the current user up to the message.
+     * @param id room id.
+     * @param messageId id of the last read message.
+     * @param principal current user.
+     * @return marker with the number of messages of others after it.
+     */
+    @PutMapping("/room/{id}/read")
+    public ResponseEntity<ReadMarker> markRead(@PathVariable int id, @RequestBody int messageId, Principal principal) {
+        referenceValidator.checkRoomExists(id);
+        return ResponseEntity.ok(readMarkers.markRead(principal.getName(), id, messageId));
+    }
+
+    /**
+     * Unread counts of the current user in every room they have marked as read at least once.
+     * @param id person id, counts of other persons are forbidden.
+     * @param principal current user.
+     * @return markers ordered by room id.
+     */
+    @GetMapping("/person/{id}/unread")
+    public ResponseEntity<List<ReadMarker>> findUnread(@PathVariable int id, Principal principal) {
+        return ResponseEntity.ok(readMarkers.findByPerson(principal.getName(), id));
+    }
+}
@@ -1,6 +1,7 @@
 package ru.job4j.chat.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.transaction.annotation.Transactional;
@@ -13,17 +14,23 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.server.ResponseStatusException;
 import ru.job4j.chat.domain.Role;
 import ru.job4j.chat.dto.RoleDTO;
+import ru.job4j.chat.dto.VersionDTO;
 import ru.job4j.chat.exception.ThereIsNoRoleWithThisNameException;
 import ru.job4j.chat.repository.RoleRepository;
+import ru.job4j.chat.security.PrincipalCache;
+import ru.job4j.chat.service.ReferenceValidator;
 
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
@@ -31,24 +38,59 @@ import java.util.stream.StreamSupport;
 @RestController
 @RequestMapping("/role")
 public class RoleController {
+    private static final List<String> FIELDS = List.of("id", "name");
+
     private final RoleRepository roleRepository;
     private final ObjectMapper objectMapper;
+    private final ReferenceValidator referenceValidator;
+    private final PrincipalCache principalCache;
 
-    public RoleController(final RoleRepository roleRepository, final ObjectMapper objectMapper) {
+    public RoleController(final RoleRepository roleRepository,
+                          final ObjectMapper objectMapper,
+                          final ReferenceValidator referenceValidator,
+                          final PrincipalCache principalCache) {
         this.roleRepository = roleRepository;
         this.objectMapper = objectMapper;
+        this.referenceValidator = referenceValidator;
+        this.principalCache = principalCache;
     }
 
     @GetMapping("/")
-    public ResponseEntity<List<Role>> findAll() {
+    @Transactional(readOnly = true)
+    public ResponseEntity<List<Role>> findAll(WebRequest request) {
+        if (request.checkNotModified(roleRepository.findVersion().toEtag())) {
+            return null;
+        }
         List<Role> roles = StreamSupport.stream(
                 this.roleRepository.findAll().spliterator(), false
         ).collect(Collectors.toList());
         return ResponseEntity.ok(roles);
     }
 
+    @GetMapping(value = "/", params = "fields")
+    @Transactional(readOnly = true)
+    public ResponseEntity<List<Map<String, Object>>> findAllFields(@RequestParam String fields) {
+        return ResponseEntity.ok(roleRepository.findFields(Role.class, Fields.parse(fields, FIELDS), null, Pageable.unpaged()));
+    }
+
+    @GetMapping(value = "/{id}", params = "fields")
+    @Transactional(readOnly = true)
+    public ResponseEntity<Map<String, Object>> findByIdFields(@PathVariable int id, @RequestParam String fields) {
+        List<Map<String, Object>> roles = roleRepository.findFields(Role.class, Fields.parse(fields, FIELDS),
+                (root, query, builder) -> builder.equal(root.get("id"), id), Pageable.unpaged());
+        if (roles.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Role with id = " + id + " not found");
+        }
+        return ResponseEntity.ok(roles.get(0));
+    }
+
     @GetMapping("/{id}")
-    public ResponseEntity<Role> findById(@PathVariable int id) {
+    @Transactional(readOnly = true)
+    public ResponseEntity<Role> findById(@PathVariable int id, WebRequest request) {
+        VersionDTO version = roleRepository.findVersionById(id);
+        if (version.getCount() > 0 && request.checkNotModified(version.toEtag())) {
+            return null;
+        }
         Role role = roleRepository.findById(id)
                 .orElseThrow(() -> new ResponseStatusException(
                         HttpStatus.NOT_FOUND, "Role with id = " + id + " not found"
@@ -57,6 +99,7 @@ public class RoleController {
     }
 
     @GetMapping("/name/{name}")
+    @Transactional(readOnly = true)
     public ResponseEntity<Role> getRoleByName(@PathVariable String name) {
         Role role = roleRepository.findByName(name)
                 .orElseThrow(() -> new ThereIsNoRoleWithThisNameException("There is no role named " + name));
@@ -76,6 +119,7 @@ public class RoleController {
     public ResponseEntity<Void> update(@RequestBody Role role) {
         checkName(role.getName());
         this.roleRepository.save(role);
+        principalCache.evictAll();
         return ResponseEntity.ok().build();
     }
 
@@ -90,6 +134,7 @@ public class RoleController {
             checkName(name);
             role.setName(name);
         }
+        principalCache.evictAll();
         return ResponseEntity.ok(roleRepository.save(role));
     }
 
@@ -98,6 +143,8 @@ public class RoleController {
         Role role = new Role();
         role.setId(id);
         this.roleRepository.delete(role);
+        referenceValidator.evictRole(id);
+        principalCache.evictAll();
         return ResponseEntity.ok().build();
     }
 
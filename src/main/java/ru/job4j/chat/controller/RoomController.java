@@ -1,8 +1,9 @@
 package ru.job4j.chat.controller;
 
-import org.springframework.core.ParameterizedTypeReference;
-import org.springframework.http.HttpMethod;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -13,17 +14,28 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import ru.job4j.chat.domain.Message;
-import ru.job4j.chat.domain.Person;
 import ru.job4j.chat.domain.Room;
+import ru.job4j.chat.domain.RoomPurge;
 import ru.job4j.chat.dto.RoomDTO;
+import ru.job4j.chat.dto.VersionDTO;
 import ru.job4j.chat.repository.RoomRepository;
+import ru.job4j.chat.service.MessageHub;
+import ru.job4j.chat.service.ReadMarkers;
+import ru.job4j.chat.service.RecentMessages;
+import ru.job4j.chat.service.ReferenceValidator;
+import ru.job4j.chat.service.RoomPurger;
+import ru.job4j.chat.service.RoomRemover;
 
+import java.net.URI;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
@@ -31,36 +43,134 @@ import java.util.stream.StreamSupport;
 @RestController
 @RequestMapping("/room")
 public class RoomController {
+    private static final String MESSAGES = "messages";
+    private static final List<String> FIELDS = List.of("id", "name", "created", "authorId");
+    private static final List<String> DETAIL_FIELDS = List.of("id", "name", "created", "authorId", MESSAGES);
+
     private final RoomRepository roomRepository;
-    private final RestTemplate restTemplate;
+    private final RecentMessages recentMessages;
+    private final ReferenceValidator referenceValidator;
+    private final MessageHub messageHub;
+    private final RoomPurger roomPurger;
+    private final RoomRemover roomRemover;
+    private final ReadMarkers readMarkers;
 
-    public RoomController(RoomRepository roomRepository, RestTemplate restTemplate) {
+    public RoomController(RoomRepository roomRepository,
+                          RecentMessages recentMessages,
+                          ReferenceValidator referenceValidator,
+                          MessageHub messageHub,
+                          RoomPurger roomPurger,
+                          RoomRemover roomRemover,
+                          ReadMarkers readMarkers) {
         this.roomRepository = roomRepository;
-        this.restTemplate = restTemplate;
+        this.recentMessages = recentMessages;
+        this.referenceValidator = referenceValidator;
+        this.messageHub = messageHub;
+        this.roomPurger = roomPurger;
+        this.roomRemover = roomRemover;
+        this.readMarkers = readMarkers;
     }
 
     @GetMapping("/")
-    public ResponseEntity<List<Room>> findAll() {
+    @Transactional(readOnly = true)
+    public ResponseEntity<List<Room>> findAll(WebRequest request) {
+        if (request.checkNotModified(roomRepository.findVersion().toEtag())) {
+            return null;
+        }
         List<Room> rooms = StreamSupport.stream(roomRepository.findAll().spliterator(), false)
                 .collect(Collectors.toList());
         return ResponseEntity.ok(rooms);
     }
 
+    /**
+     * Sparse fieldset of all rooms, e.g. ?fields=id,name. Only the requested columns are selected.
+     * @param fields comma-separated fields: id, name, created, authorId.
+     * @return requested fields of the rooms.
+     */
+    @GetMapping(value = "/", params = "fields")
+    @Transactional(readOnly = true)
+    public ResponseEntity<List<Map<String, Object>>> findAllFields(@RequestParam String fields) {
+        return ResponseEntity.ok(roomRepository.findFields(
+                Room.class, Fields.parse(fields, FIELDS), notDeleted(), Pageable.unpaged()));
+    }
+
+    /**
+     * Sparse fieldset of a room. Messages come from the buffer of recent messages, only when requested.
+     * @param id room id.
+     * @param fields comma-separated fields: id, name, created, authorId, messages.
+     * @param recent number of messages, all buffered messages by default.
+     * @return requested fields of the room.
+     */
+    @GetMapping(value = "/{id}", params = "fields")
+    @Transactional(readOnly = true)
+    public ResponseEntity<Map<String, Object>> findByIdFields(@PathVariable int id,
+                                                              @RequestParam String fields,
+                                                              @RequestParam(required = false) Integer recent) {
+        List<String> selected = Fields.parse(fields, DETAIL_FIELDS);
+        List<String> columns = selected.stream().filter(field -> !MESSAGES.equals(field)).collect(Collectors.toList());
+        if (columns.isEmpty()) {
+            columns.add("id");
+        }
+        Specification<Room> byId = (root, query, builder) -> builder.equal(root.get("id"), id);
+        List<Map<String, Object>> rooms = roomRepository.findFields(
+                Room.class, columns, byId.and(notDeleted()), Pageable.unpaged());
+        if (rooms.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Room with id = " + id + " not found");
+        }
+        Map<String, Object> room = rooms.get(0);
+        room.keySet().retainAll(selected);
+        if (selected.contains(MESSAGES)) {
+            room.put(MESSAGES, recentMessages.recent(id, recent == null ? recentMessages.getCapacity() : recent));
+        }
+        return ResponseEntity.ok(room);
+    }
+
+    /**
+     * Returns the room with its newest messages, newest first.
+     * Messages come from the in-memory buffer of recent messages.
+     * The ETag covers the room and the returned messages and is built from the version of the room,
+     * so the room is loaded and serialized only when one of them changed.
+     * With chat.cache.enabled both the version and the room come from the query and second-level caches.
+     * @param id room id.
+     * @param recent number of messages, all buffered messages by default.
+     * @return room with messages, or 304 if it matches If-None-Match.
+     */
     @GetMapping("/{id}")
-    public ResponseEntity<Room> findById(@PathVariable int id) {
+    @Transactional(readOnly = true)
+    public ResponseEntity<Room> findById(@PathVariable int id,
+                                         @RequestParam(required = false) Integer recent,
+                                         WebRequest request) {
+        VersionDTO version = roomRepository.findVersionById(id);
+        if (version.getCount() == 0) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Room with id = " + id + " not found");
+        }
+        List<Message> messages = recentMessages.recent(id, recent == null ? recentMessages.getCapacity() : recent);
+        if (request.checkNotModified(version.plus(VersionDTO.of(messages)).toEtag())) {
+            return null;
+        }
         Room room = roomRepository.findById(id)
                 .orElseThrow(() -> new ResponseStatusException(
                         HttpStatus.NOT_FOUND, "Room with id = " + id + " not found"
                 ));
-        List<Message> messages = restTemplate.exchange(
-                "http://localhost:8080/message/roomId/" + id,
-                HttpMethod.GET, null, new ParameterizedTypeReference<List<Message>>() { })
-                .getBody();
         room.setMessages(messages);
         return ResponseEntity.ok(room);
     }
 
+    /**
+     * Subscribes to new, changed and deleted messages of a room.
+     * Events are named created, updated and deleted and carry the message as JSON.
+     * @param id room id.
+     * @return stream of server-sent events.
+     */
+    @GetMapping(value = "/{id}/subscribe", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Transactional(readOnly = true)
+    public SseEmitter subscribe(@PathVariable int id) {
+        referenceValidator.checkRoomExists(id);
+        return messageHub.subscribe(id);
+    }
+
     @GetMapping("/authorId/{authorId}")
+    @Transactional(readOnly = true)
     public ResponseEntity<List<Room>> findAllRoomCreatedByUser(@PathVariable int authorId) {
         return ResponseEntity.ok(roomRepository.findByAuthorId(authorId));
     }
@@ -68,7 +178,7 @@ public class RoomController {
     @PostMapping("/")
     public ResponseEntity<Room> create(@RequestBody Room room) {
         checkName(room.getName());
-        restTemplate.getForObject("http://localhost:8080/person/" + room.getAuthorId(), Person.class);
+        checkAuthorId(room.getAuthorId());
         return new ResponseEntity<>(
                 roomRepository.save(room),
                 HttpStatus.CREATED
@@ -111,26 +221,48 @@ public class RoomController {
         return ResponseEntity.ok(roomRepository.save(room));
     }
 
+    /**
+     * Hides the room at once and removes it with its messages in the background.
+     * @param id room id.
+     * @return 202 with the purge, its progress is available at /room/purge/{purgeId}.
+     */
     @DeleteMapping("/{id}")
-    public ResponseEntity<Void> deleteRoom(@PathVariable int id) {
-        Room room = new Room();
-        room.setId(id);
-        restTemplate.delete("http://localhost:8080/message/roomId/" + id);
-        roomRepository.delete(room);
-        return ResponseEntity.ok().build();
+    public ResponseEntity<RoomPurge> deleteRoom(@PathVariable int id) {
+        if (roomRepository.markDeleted(id) == 0) {
+            return ResponseEntity.ok().build();
+        }
+        referenceValidator.evictRoom(id);
+        readMarkers.forgetRoom(id);
+        RoomPurge purge = roomPurger.schedule(id, true);
+        return ResponseEntity.accepted()
+                .location(URI.create("/room/purge/" + purge.getId()))
+                .body(purge);
     }
 
+    @GetMapping("/purge/{purgeId}")
+    @Transactional(readOnly = true)
+    public ResponseEntity<RoomPurge> findPurge(@PathVariable int purgeId) {
+        return ResponseEntity.ok(roomPurger.findById(purgeId)
+                .orElseThrow(() -> new ResponseStatusException(
+                        HttpStatus.NOT_FOUND, "Purge with id = " + purgeId + " not found"
+                )));
+    }
+
+    /**
+     * Deletes all rooms of the person together with their messages.
+     * @param authorId person id.
+     * @return status of operation.
+     */
     @DeleteMapping("/authorId/{authorId}")
     public ResponseEntity<Void> deleteAllUserRooms(@PathVariable int authorId) {
-        roomRepository.findByAuthorId(authorId).stream().forEach(
-                room -> {
-                    restTemplate.delete("http://localhost:8080/message/roomId/" + room.getId());
-                }
-        );
-        roomRepository.deleteAllByAuthorId(authorId);
+        roomRemover.removeAllOfAuthor(authorId);
         return ResponseEntity.ok().build();
     }
 
+    private static Specification<Room> notDeleted() {
+        return (root, query, builder) -> builder.isFalse(root.get("deleted"));
+    }
+
     private void checkName(String roomName) {
         if (roomName == null || roomName.isEmpty()) {
             throw new IllegalArgumentException("Name of room must not be empty");
@@ -147,6 +279,6 @@ public class RoomController {
     }
 
     private void checkAuthorId(int authorId) {
-        restTemplate.getForObject("http://localhost:8080/person/" + authorId, Person.class);
+        referenceValidator.checkPersonExists(authorId);
     }
 }
@@ -1,5 +1,6 @@
 package ru.job4j.chat.domain;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
@@ -10,16 +11,27 @@ import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
 import java.time.LocalDateTime;
 
 @Entity
+@Table(indexes = @Index(name = "message_room_id_created_id_idx", columnList = "room_id, created, id"))
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
 @EqualsAndHashCode(onlyExplicitlyIncluded = true)
 public class Message {
+    /**
+     * Taken from a pooled sequence rather than an identity column,
+     * so that Hibernate can batch inserts of messages.
+     */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "message_id_seq")
+    @SequenceGenerator(name = "message_id_seq", sequenceName = "message_id_seq", allocationSize = 50)
     @EqualsAndHashCode.Include
     private int id;
 
@@ -35,7 +47,20 @@ public class Message {
     @Column(name = "author_id", nullable = false)
     private int authorId;
 
+    /**
+     * Not kept for archived messages, they never change.
+     */
+    @JsonIgnore
+    @Column(nullable = false)
+    private LocalDateTime updated = LocalDateTime.now();
+
     public Message(String text) {
         this.text = text;
     }
+
+    @PrePersist
+    @PreUpdate
+    private void touch() {
+        updated = LocalDateTime.now();
+    }
 }
@@ -1,14 +1,19 @@
 package ru.job4j.chat.domain;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
 import javax.persistence.Transient;
 import java.time.LocalDateTime;
 import java.util.List;
@@ -18,6 +23,7 @@ import java.util.concurrent.CopyOnWriteArrayList;
 @Data
 @NoArgsConstructor
 @EqualsAndHashCode(onlyExplicitlyIncluded = true)
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "person")
 public class Person {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -36,10 +42,20 @@ public class Person {
     @Column(name = "role_id", nullable = false)
     private int roleId;
 
+    @JsonIgnore
+    @Column(nullable = false)
+    private LocalDateTime updated = LocalDateTime.now();
+
     @Transient
     private List<Room> rooms = new CopyOnWriteArrayList<>();
 
     public Person(String name) {
         this.name = name;
     }
+
+    @PrePersist
+    @PreUpdate
+    private void touch() {
+        updated = LocalDateTime.now();
+    }
 }
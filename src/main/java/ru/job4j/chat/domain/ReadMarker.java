@@ -0,0 +1,54 @@
+package ru.job4j.chat.domain;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+import java.time.LocalDateTime;
+
+/**
+ * The last message a person has read in a room and the number of newer messages of other persons.
+ * Newer means created later, ids come from a pooled sequence and do not follow the order of messages.
+ * The count is kept up to date when messages are created and deleted, see ReadMarkers.
+ */
+@Entity
+@Table(name = "read_marker",
+        uniqueConstraints = @UniqueConstraint(columnNames = {"person_id", "room_id"}),
+        indexes = @Index(name = "read_marker_room_id_idx", columnList = "room_id"))
+@Data
+@NoArgsConstructor
+@EqualsAndHashCode(onlyExplicitlyIncluded = true)
+public class ReadMarker {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @EqualsAndHashCode.Include
+    private int id;
+
+    @Column(name = "person_id", nullable = false)
+    private int personId;
+
+    @Column(name = "room_id", nullable = false)
+    private int roomId;
+
+    @Column(name = "last_read_message_id", nullable = false)
+    private int lastReadMessageId;
+
+    @Column(name = "last_read_created", nullable = false)
+    private LocalDateTime lastReadCreated;
+
+    @Column(name = "unread_count", nullable = false)
+    private int unreadCount;
+
+    public ReadMarker(int personId, int roomId) {
+        this.personId = personId;
+        this.roomId = roomId;
+    }
+}
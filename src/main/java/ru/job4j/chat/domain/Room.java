@@ -1,25 +1,34 @@
 package ru.job4j.chat.domain;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
+import javax.persistence.Table;
 import javax.persistence.Transient;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 @Entity
+@Table(indexes = @Index(name = "room_author_id_idx", columnList = "author_id"))
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
 @EqualsAndHashCode(onlyExplicitlyIncluded = true)
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "room")
 public class Room {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -35,10 +44,32 @@ public class Room {
     @Column(name = "author_id", nullable = false)
     private int authorId;
 
+    /**
+     * Time of the last change. ETags are built from it, see VersionDTO,
+     * so reads can be answered with 304 without loading the room.
+     */
+    @JsonIgnore
+    @Column(nullable = false)
+    private LocalDateTime updated = LocalDateTime.now();
+
+    /**
+     * Set when the room is deleted. The room is hidden from reads
+     * and removed by RoomPurger once its messages are gone.
+     */
+    @JsonIgnore
+    @Column(nullable = false)
+    private boolean deleted;
+
     @Transient
     private List<Message> messages = new CopyOnWriteArrayList<>();
 
     public Room(String name) {
         this.name = name;
     }
+
+    @PrePersist
+    @PreUpdate
+    private void touch() {
+        updated = LocalDateTime.now();
+    }
 }
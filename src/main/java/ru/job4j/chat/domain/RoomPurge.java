@@ -0,0 +1,71 @@
+package ru.job4j.chat.domain;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.time.LocalDateTime;
+
+/**
+ * Background removal of messages of a room.
+ * Messages written up to upTo, or all messages when the room is dropped, are deleted in chunks,
+ * the number of deleted rows is saved with every chunk, so a restart continues where it stopped.
+ */
+@Entity
+@Table(name = "room_purge")
+@Data
+@NoArgsConstructor
+@EqualsAndHashCode(onlyExplicitlyIncluded = true)
+public class RoomPurge {
+    public enum Status {
+        PENDING, DONE
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @EqualsAndHashCode.Include
+    private int id;
+
+    @Column(name = "room_id", nullable = false)
+    private int roomId;
+
+    /**
+     * Messages updated at or before this time are removed. Ids are allocated in blocks
+     * per instance and do not follow insert order, so they cannot be the bound.
+     * Null when the room is dropped.
+     */
+    @Column(name = "up_to")
+    private LocalDateTime upTo;
+
+    /**
+     * Whether the room itself is removed after its messages.
+     */
+    @Column(name = "drop_room", nullable = false)
+    private boolean dropRoom;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Status status = Status.PENDING;
+
+    @Column(nullable = false)
+    private long purged;
+
+    @Column(nullable = false)
+    private LocalDateTime created = LocalDateTime.now();
+
+    private LocalDateTime finished;
+
+    public RoomPurge(int roomId, LocalDateTime upTo, boolean dropRoom) {
+        this.roomId = roomId;
+        this.upTo = upTo;
+        this.dropRoom = dropRoom;
+    }
+}
@@ -0,0 +1,20 @@
+package ru.job4j.chat.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import ru.job4j.chat.domain.Message;
+
+import java.util.List;
+
+/**
+ * Messages of a room ordered from newest to oldest.
+ * nextCursor is null when there are no older messages.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class MessagePage {
+    private List<Message> messages;
+    private String nextCursor;
+}
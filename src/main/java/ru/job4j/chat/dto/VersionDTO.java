@@ -0,0 +1,51 @@
+package ru.job4j.chat.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import ru.job4j.chat.domain.Message;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Collection;
+
+/**
+ * Version of a row or of a set of rows, read with one aggregate query instead of the rows:
+ * the newest update time, the number of rows and the sum of their ids.
+ * Every insert and update moves the update time, a delete changes the count,
+ * and the sum of ids changes when one row replaces another, so any change gives a new ETag.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class VersionDTO {
+    private LocalDateTime updated;
+    private long count;
+    private long idSum;
+
+    public static VersionDTO of(Collection<Message> messages) {
+        VersionDTO version = new VersionDTO(null, 0, 0);
+        for (Message message : messages) {
+            version = version.plus(new VersionDTO(message.getUpdated(), 1, message.getId()));
+        }
+        return version;
+    }
+
+    /**
+     * @return version of both sets of rows together.
+     */
+    public VersionDTO plus(VersionDTO other) {
+        LocalDateTime newest = updated == null || other.updated != null && other.updated.isAfter(updated)
+                ? other.updated
+                : updated;
+        return new VersionDTO(newest, count + other.count, idSum + other.idSum);
+    }
+
+    /**
+     * @return strong entity tag without quotes.
+     */
+    public String toEtag() {
+        long micros = updated == null ? 0 : updated.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + updated.getNano() / 1_000;
+        return Long.toHexString(micros) + "-" + Long.toHexString(count) + "-" + Long.toHexString(idSum);
+    }
+}
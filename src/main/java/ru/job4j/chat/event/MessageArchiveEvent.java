@@ -0,0 +1,17 @@
+package ru.job4j.chat.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import ru.job4j.chat.domain.Message;
+
+import java.util.List;
+
+/**
+ * Published after a batch of messages was moved from the database to the archive,
+ * without a MessageEvent per message.
+ */
+@Data
+@AllArgsConstructor
+public class MessageArchiveEvent {
+    private List<Message> messages;
+}
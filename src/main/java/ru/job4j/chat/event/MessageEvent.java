@@ -0,0 +1,20 @@
+package ru.job4j.chat.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import ru.job4j.chat.domain.Message;
+
+/**
+ * Published by the message write paths inside their transaction.
+ * Listeners that must only see committed data use AFTER_COMMIT.
+ */
+@Data
+@AllArgsConstructor
+public class MessageEvent {
+    public enum Type {
+        CREATED, UPDATED, DELETED
+    }
+
+    private Type type;
+    private Message message;
+}
@@ -0,0 +1,16 @@
+package ru.job4j.chat.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * Published after messages created before the time were removed by dropping their partitions,
+ * without a MessageEvent per message.
+ */
+@Data
+@AllArgsConstructor
+public class MessageRetentionEvent {
+    private LocalDateTime before;
+}
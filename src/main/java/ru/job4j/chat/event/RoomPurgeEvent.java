@@ -0,0 +1,14 @@
+package ru.job4j.chat.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import ru.job4j.chat.domain.RoomPurge;
+
+/**
+ * Published after every committed chunk of a room purge.
+ */
+@Data
+@AllArgsConstructor
+public class RoomPurgeEvent {
+    private RoomPurge purge;
+}
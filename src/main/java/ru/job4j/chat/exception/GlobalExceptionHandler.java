@@ -3,6 +3,7 @@ package ru.job4j.chat.exception;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -20,7 +21,7 @@ public class GlobalExceptionHandler {
         this.objectMapper = objectMapper;
     }
 
-    @ExceptionHandler(value = {IllegalArgumentException.class})
+    @ExceptionHandler(value = {IllegalArgumentException.class, ThereIsNoRoleWithThisNameException.class})
     public void handleException(Exception e, HttpServletResponse resp) throws IOException {
         resp.setStatus(HttpStatus.BAD_REQUEST.value());
         resp.setContentType("application/json");
@@ -32,4 +33,18 @@ public class GlobalExceptionHandler {
         }));
         LOGGER.error(e.getMessage());
     }
+
+    @ExceptionHandler(value = {PasswordHashingRejectedException.class, MessageWriteRejectedException.class})
+    public void handleOverload(Exception e, HttpServletResponse resp) throws IOException {
+        resp.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        resp.setHeader(HttpHeaders.RETRY_AFTER, "1");
+        resp.setContentType("application/json");
+        resp.getWriter().write(objectMapper.writeValueAsString(new HashMap<>() {
+            {
+                put("message", e.getMessage());
+                put("type", e.getClass());
+            }
+        }));
+        LOGGER.warn(e.getMessage());
+    }
 }
@@ -0,0 +1,7 @@
+package ru.job4j.chat.exception;
+
+public class MessageWriteRejectedException extends RuntimeException {
+    public MessageWriteRejectedException(String message) {
+        super(message);
+    }
+}
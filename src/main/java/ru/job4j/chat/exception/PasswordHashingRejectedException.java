@@ -0,0 +1,11 @@
+package ru.job4j.chat.exception;
+
+public class PasswordHashingRejectedException extends RuntimeException {
+    public PasswordHashingRejectedException(String message) {
+        super(message);
+    }
+
+    public PasswordHashingRejectedException(String message, Exception e) {
+        super(message, e);
+    }
+}
@@ -0,0 +1,144 @@
+package ru.job4j.chat.filter;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Responses of requests sent with an Idempotency-Key, kept for a window after the first request.
+ * The number of completed keys is bounded, the oldest are evicted first. Keys of requests that
+ * are still running weigh nothing, so duplicates waiting for them are never cut off by size
+ * eviction; there are no more of them than requests in flight.
+ */
+@Component
+@ManagedResource(objectName = "ru.job4j.chat:name=IdempotencyStore")
+public class IdempotencyStore {
+    private final Cache<String, Entry> entries;
+    private final Duration wait;
+    private final LongAdder replays = new LongAdder();
+
+    public IdempotencyStore(@Value("${chat.idempotency.max-size:10000}") long maxSize,
+                            @Value("${chat.idempotency.ttl:1h}") Duration ttl,
+                            @Value("${chat.idempotency.wait:30s}") Duration wait) {
+        this.wait = wait;
+        this.entries = Caffeine.newBuilder()
+                .maximumWeight(maxSize)
+                .<String, Entry>weigher((key, entry) -> entry.response.isDone() ? 1 : 0)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    /**
+     * @return how long a duplicate waits for the first request with the same key.
+     */
+    public Duration getWait() {
+        return wait;
+    }
+
+    /**
+     * Claims the key for a new request.
+     * @param key key of the request.
+     * @param entry entry of the new request.
+     * @return null if the key is claimed, then the caller must complete or release the entry,
+     * otherwise the entry of the first request with this key.
+     */
+    public Entry claim(String key, Entry entry) {
+        return entries.asMap().putIfAbsent(key, entry);
+    }
+
+    /**
+     * Remembers the response of the request that claimed the key and wakes up its duplicates.
+     * The entry is put again, so that it is weighed as completed and counts towards the size.
+     */
+    public void complete(String key, Entry entry, Response response) {
+        entry.response.complete(response);
+        entries.asMap().replace(key, entry, entry);
+    }
+
+    /**
+     * Forgets the key of a request that failed, so that a retry runs the handler again.
+     * Duplicates that are waiting get null and try to claim the key themselves.
+     */
+    public void release(String key, Entry entry) {
+        entries.asMap().remove(key, entry);
+        entry.response.complete(null);
+    }
+
+    public void replayed() {
+        replays.increment();
+    }
+
+    @ManagedAttribute
+    public long getSize() {
+        return entries.estimatedSize();
+    }
+
+    @ManagedAttribute
+    public long getReplayCount() {
+        return replays.sum();
+    }
+
+    /**
+     * Request with a key, identified by the digest of its body,
+     * so that the key cannot be reused for a different request.
+     */
+    public static final class Entry {
+        private final byte[] fingerprint;
+        private final CompletableFuture<Response> response = new CompletableFuture<>();
+
+        public Entry(byte[] fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+
+        public boolean matches(Entry other) {
+            return Arrays.equals(fingerprint, other.fingerprint);
+        }
+
+        /**
+         * @return response of the request, completed with null if the request failed.
+         */
+        public CompletableFuture<Response> getResponse() {
+            return response;
+        }
+    }
+
+    public static final class Response {
+        private final int status;
+        private final String contentType;
+        private final Map<String, List<String>> headers;
+        private final byte[] body;
+
+        public Response(int status, String contentType, Map<String, List<String>> headers, byte[] body) {
+            this.status = status;
+            this.contentType = contentType;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public Map<String, List<String>> getHeaders() {
+            return headers;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+    }
+}
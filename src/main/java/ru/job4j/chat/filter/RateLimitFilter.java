@@ -0,0 +1,79 @@
+package ru.job4j.chat.filter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Rejects requests of a client that ran out of tokens with 429 and Retry-After.
+ * The chain has two instances: one before authentication limits sign-in and sign-up
+ * by address, the other after JWTAuthorizationFilter limits reads and writes by person.
+ * Behind a proxy the address is the client's one from X-Forwarded-For, see server.forward-headers-strategy.
+ */
+public class RateLimitFilter extends OncePerRequestFilter {
+    private final RateLimiter rateLimiter;
+    private final ObjectMapper objectMapper;
+    private final Set<RequestClass> requestClasses;
+
+    public RateLimitFilter(RateLimiter rateLimiter, ObjectMapper objectMapper, Set<RequestClass> requestClasses) {
+        this.rateLimiter = rateLimiter;
+        this.objectMapper = objectMapper;
+        this.requestClasses = requestClasses;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain chain) throws ServletException, IOException {
+        RequestClass requestClass = RequestClass.of(request);
+        if (requestClasses.contains(requestClass)) {
+            Duration wait = rateLimiter.acquire(client(request), requestClass);
+            if (!wait.isZero()) {
+                long seconds = (wait.toMillis() + 999) / 1000;
+                response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+                response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(seconds));
+                response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+                response.getWriter().write(objectMapper.writeValueAsString(
+                        Map.of("message", "Too many requests, retry after " + seconds + " s")
+                ));
+                return;
+            }
+        }
+        chain.doFilter(request, response);
+    }
+
+    /**
+     * Both instances are of one class, so each needs its own marker to run once per request.
+     */
+    @Override
+    protected String getAlreadyFilteredAttributeName() {
+        return super.getAlreadyFilteredAttributeName() + requestClasses;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !rateLimiter.isEnabled();
+    }
+
+    private static String client(HttpServletRequest request) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || authentication instanceof AnonymousAuthenticationToken) {
+            return request.getRemoteAddr();
+        }
+        return authentication.getName();
+    }
+}
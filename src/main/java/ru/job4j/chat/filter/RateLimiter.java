@@ -0,0 +1,99 @@
+package ru.job4j.chat.filter;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.core.env.Environment;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token buckets per client and request class.
+ * A bucket is one atomic number, the time when it will be full again,
+ * so taking a token is a compare-and-set without locks and without allocation.
+ * A bucket that stays idle for longer than it takes to refill is full anyway and is evicted,
+ * the number of buckets is bounded by chat.rate-limit.max-buckets as well.
+ */
+@Component
+@ManagedResource(objectName = "ru.job4j.chat:name=RateLimiter")
+public class RateLimiter {
+    private final boolean enabled;
+    private final Map<RequestClass, Limit> limits = new EnumMap<>(RequestClass.class);
+    private final Cache<String, AtomicLong> buckets;
+    private final LongAdder rejected = new LongAdder();
+
+    public RateLimiter(Environment environment) {
+        this.enabled = environment.getProperty("chat.rate-limit.enabled", Boolean.class, true);
+        long maxIdleNanos = 0;
+        for (RequestClass requestClass : RequestClass.values()) {
+            String prefix = "chat.rate-limit." + requestClass.name().toLowerCase() + ".";
+            int capacity = environment.getProperty(prefix + "capacity", Integer.class, requestClass.getCapacity());
+            double perSecond = environment.getProperty(prefix + "per-second", Double.class, requestClass.getPerSecond());
+            if (capacity < 1 || perSecond <= 0) {
+                throw new IllegalArgumentException("Rate limit of " + requestClass + " must be positive");
+            }
+            Limit limit = new Limit(capacity, perSecond);
+            limits.put(requestClass, limit);
+            maxIdleNanos = Math.max(maxIdleNanos, limit.burstNanos);
+        }
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(environment.getProperty("chat.rate-limit.max-buckets", Long.class, 1_000_000L))
+                .expireAfterAccess(maxIdleNanos, TimeUnit.NANOSECONDS)
+                .build();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Takes a token from the bucket of the client for the request class.
+     * @param client name of the person or address of an anonymous client.
+     * @param requestClass class of the request.
+     * @return zero if the request may proceed, otherwise how long to wait for the next token.
+     */
+    public Duration acquire(String client, RequestClass requestClass) {
+        Limit limit = limits.get(requestClass);
+        AtomicLong fullAt = buckets.get(requestClass.ordinal() + ":" + client, key -> new AtomicLong(System.nanoTime()));
+        long now = System.nanoTime();
+        while (true) {
+            long current = fullAt.get();
+            long next = Math.max(current, now) + limit.intervalNanos;
+            long wait = next - now - limit.burstNanos;
+            if (wait > 0) {
+                rejected.increment();
+                return Duration.ofNanos(wait);
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return Duration.ZERO;
+            }
+        }
+    }
+
+    @ManagedAttribute
+    public long getBuckets() {
+        return buckets.estimatedSize();
+    }
+
+    @ManagedAttribute
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    private static final class Limit {
+        private final long intervalNanos;
+        private final long burstNanos;
+
+        private Limit(int capacity, double perSecond) {
+            this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / perSecond);
+            this.burstNanos = intervalNanos * capacity;
+        }
+    }
+}
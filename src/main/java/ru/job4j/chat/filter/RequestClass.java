@@ -0,0 +1,53 @@
+package ru.job4j.chat.filter;
+
+import org.springframework.http.HttpMethod;
+
+import javax.servlet.http.HttpServletRequest;
+
+import static ru.job4j.chat.security.JWTAuthenticationFilter.SIGN_UP_URL;
+
+/**
+ * Kind of request that has its own rate limit, with the default limit.
+ * Limits are set by chat.rate-limit.[read|write|auth].capacity and .per-second.
+ */
+public enum RequestClass {
+    READ(100, 50),
+    WRITE(50, 20),
+    AUTH(10, 1);
+
+    public static final String LOGIN_URL = "/login";
+
+    private final int capacity;
+    private final double perSecond;
+
+    RequestClass(int capacity, double perSecond) {
+        this.capacity = capacity;
+        this.perSecond = perSecond;
+    }
+
+    /**
+     * @return number of requests that may be sent at once.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return number of requests per second that may be sent for a long time.
+     */
+    public double getPerSecond() {
+        return perSecond;
+    }
+
+    public static RequestClass of(HttpServletRequest request) {
+        String method = request.getMethod();
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (HttpMethod.POST.matches(method) && (LOGIN_URL.equals(path) || SIGN_UP_URL.equals(path))) {
+            return AUTH;
+        }
+        if (HttpMethod.GET.matches(method) || HttpMethod.HEAD.matches(method) || HttpMethod.OPTIONS.matches(method)) {
+            return READ;
+        }
+        return WRITE;
+    }
+}
@@ -1,11 +1,118 @@
 package ru.job4j.chat.repository;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import ru.job4j.chat.domain.Message;
+import ru.job4j.chat.dto.VersionDTO;
 
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
-public interface MessageRepository extends CrudRepository<Message, Integer> {
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_NATIVE_SPACES;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
+
+public interface MessageRepository extends CrudRepository<Message, Integer>, MessageRepositoryCustom, ProjectionRepository {
     List<Message> findByRoomId(int roomId);
-    void deleteAllByRoomId(int roomId);
+
+    List<Message> findByRoomIdOrderByCreatedDescIdDesc(int roomId, Pageable pageable);
+
+    List<Message> findByIdGreaterThanOrderById(int id, Pageable pageable);
+
+    /**
+     * Page of ids after the first one up to the second one, read from the primary key index only.
+     */
+    @Query("select m.id from Message m where m.id > :after and m.id <= :upTo order by m.id")
+    List<Integer> findIdsBetween(@Param("after") int after, @Param("upTo") int upTo, Pageable pageable);
+
+    /**
+     * Page of messages after the id that were written after the watermark or changed since the time,
+     * what a loaded index snapshot is missing.
+     */
+    @Query("select m from Message m where m.id > :after and (m.id > :watermark or m.updated > :since) order by m.id")
+    List<Message> findChangedSince(@Param("after") int after,
+                                   @Param("watermark") int watermark,
+                                   @Param("since") LocalDateTime since,
+                                   Pageable pageable);
+
+    /**
+     * Keyset page of messages older than (created, id).
+     * The row value comparison lets the database seek on the (room_id, created, id) index,
+     * the redundant bound on created lets PostgreSQL skip newer monthly partitions.
+     */
+    @Query(value = "SELECT * FROM message WHERE room_id = :roomId AND created <= :created"
+            + " AND (created, id) < (:created, :id)"
+            + " ORDER BY created DESC, id DESC LIMIT :limit", nativeQuery = true)
+    List<Message> findByRoomIdBefore(@Param("roomId") int roomId,
+                                     @Param("created") LocalDateTime created,
+                                     @Param("id") int id,
+                                     @Param("limit") int limit);
+
+    @Query("select new ru.job4j.chat.dto.VersionDTO(max(m.updated), count(m), coalesce(sum(m.id), 0))"
+            + " from Message m where m.id = :id"
+            + " and exists (select r.id from Room r where r.id = m.roomId and r.deleted = false)")
+    VersionDTO findVersionById(@Param("id") int id);
+
+    /**
+     * Forward-only cursor over the whole history of a room, oldest first.
+     * Must be consumed inside a transaction and closed afterwards.
+     */
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "1000"), @QueryHint(name = HINT_READONLY, value = "true")})
+    @Query("select m from Message m where m.roomId = :roomId order by m.created, m.id")
+    Stream<Message> streamAllByRoomId(@Param("roomId") int roomId);
+
+    /**
+     * Messages created before the time, in the order they are written to the archive.
+     * Rows are locked until the transaction ends, so they cannot be edited between archiving and deleting them.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select m from Message m where m.created < :before order by m.roomId, m.created, m.id")
+    List<Message> findCreatedBefore(@Param("before") LocalDateTime before, Pageable pageable);
+
+    @Modifying
+    @Query("delete from Message m where m.id in :ids")
+    int deleteAllByIdIn(@Param("ids") Collection<Integer> ids);
+
+    @Query("select count(m) from Message m where m.roomId = :roomId and m.created > :after and m.authorId <> :personId")
+    long countUnread(@Param("roomId") int roomId, @Param("after") LocalDateTime after, @Param("personId") int personId);
+
+    /**
+     * Deletes one chunk of messages of a room.
+     * Used by RoomPurger, so that a large room is never deleted in one transaction.
+     * The statement is synchronized with the message table only,
+     * otherwise Hibernate would have to evict the whole second-level cache after every chunk.
+     * @return number of deleted messages, less than limit when nothing is left.
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = HINT_NATIVE_SPACES, value = "message"))
+    @Query(value = "DELETE FROM message WHERE id IN (SELECT id FROM message"
+            + " WHERE room_id = :roomId LIMIT :limit)", nativeQuery = true)
+    int deleteChunk(@Param("roomId") int roomId, @Param("limit") int limit);
+
+    /**
+     * Deletes one chunk of messages of a room last written at or before upTo, see deleteChunk.
+     * @return number of deleted messages, less than limit when nothing is left.
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = HINT_NATIVE_SPACES, value = "message"))
+    @Query(value = "DELETE FROM message WHERE id IN (SELECT id FROM message"
+            + " WHERE room_id = :roomId AND updated <= :upTo LIMIT :limit)", nativeQuery = true)
+    int deleteChunkUpTo(@Param("roomId") int roomId, @Param("upTo") LocalDateTime upTo, @Param("limit") int limit);
+
+    /**
+     * Deletes all messages of all rooms created by the person with one statement.
+     * @return number of deleted messages.
+     */
+    @Modifying
+    @Query("delete from Message m where m.roomId in (select r.id from Room r where r.authorId = :authorId)")
+    int deleteAllByRoomAuthorId(@Param("authorId") int authorId);
 }
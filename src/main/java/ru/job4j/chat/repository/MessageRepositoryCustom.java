@@ -0,0 +1,15 @@
+package ru.job4j.chat.repository;
+
+import ru.job4j.chat.domain.Message;
+
+import java.util.List;
+
+public interface MessageRepositoryCustom {
+    /**
+     * Inserts new messages with JDBC batching, flushing and clearing
+     * the persistence context after every batch.
+     * @param messages new messages.
+     * @return the same messages with ids.
+     */
+    List<Message> saveAllInBatches(List<Message> messages);
+}
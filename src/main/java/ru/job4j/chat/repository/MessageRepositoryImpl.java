@@ -0,0 +1,34 @@
+package ru.job4j.chat.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.transaction.annotation.Transactional;
+import ru.job4j.chat.domain.Message;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+
+public class MessageRepositoryImpl implements MessageRepositoryCustom {
+    private final EntityManager entityManager;
+    private final int batchSize;
+
+    public MessageRepositoryImpl(EntityManager entityManager,
+                                 @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}") int batchSize) {
+        this.entityManager = entityManager;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    @Transactional
+    public List<Message> saveAllInBatches(List<Message> messages) {
+        for (int i = 0; i < messages.size(); i++) {
+            entityManager.persist(messages.get(i));
+            if ((i + 1) % batchSize == 0) {
+                entityManager.flush();
+                entityManager.clear();
+            }
+        }
+        entityManager.flush();
+        entityManager.clear();
+        return messages;
+    }
+}
@@ -1,10 +1,32 @@
 package ru.job4j.chat.repository;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import ru.job4j.chat.domain.Person;
+import ru.job4j.chat.dto.VersionDTO;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
-public interface PersonRepository extends CrudRepository<Person, Integer> {
+import static org.hibernate.jpa.QueryHints.HINT_CACHEABLE;
+
+public interface PersonRepository extends CrudRepository<Person, Integer>, ProjectionRepository {
+    List<Person> findAllBy(Pageable pageable);
+
+    @QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
     Optional<Person> findByName(String name);
+
+    @Query("select p.id from Person p where p.id in :ids")
+    Set<Integer> findExistingIds(@Param("ids") Collection<Integer> ids);
+
+    @QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
+    @Query("select new ru.job4j.chat.dto.VersionDTO(max(p.updated), count(p), coalesce(sum(p.id), 0))"
+            + " from Person p where p.id = :id")
+    VersionDTO findVersionById(@Param("id") int id);
 }
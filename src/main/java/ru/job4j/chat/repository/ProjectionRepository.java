@@ -0,0 +1,24 @@
+package ru.job4j.chat.repository;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Repository fragment for sparse fieldsets, shared by the repositories of all entities.
+ */
+public interface ProjectionRepository {
+    /**
+     * Selects only the given attributes of matching entities. The entities are not loaded,
+     * so the database reads and returns just these columns.
+     * @param type entity class.
+     * @param fields attribute names, must be checked against a whitelist by the caller.
+     * @param where condition, or null for all rows.
+     * @param pageable page and order, order by id when unsorted.
+     * @return a map from attribute name to value per row, attributes in the given order.
+     */
+    <T> List<Map<String, Object>> findFields(Class<T> type, List<String> fields,
+                                             Specification<T> where, Pageable pageable);
+}
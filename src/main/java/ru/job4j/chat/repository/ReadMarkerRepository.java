@@ -0,0 +1,73 @@
+package ru.job4j.chat.repository;
+
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import ru.job4j.chat.domain.ReadMarker;
+
+import javax.persistence.LockModeType;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+public interface ReadMarkerRepository extends CrudRepository<ReadMarker, Integer> {
+    List<ReadMarker> findByPersonIdOrderByRoomId(int personId);
+
+    Optional<ReadMarker> findByPersonIdAndRoomId(int personId, int roomId);
+
+    /**
+     * The marker locked until the transaction ends, addUnread and removeUnread of other transactions wait for it.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    Optional<ReadMarker> findLockedByPersonIdAndRoomId(int personId, int roomId);
+
+    /**
+     * Adds new messages of the author created at the same time
+     * to the counts of everyone else who has read the room up to an earlier message.
+     */
+    @Modifying
+    @Query("update ReadMarker r set r.unreadCount = r.unreadCount + :count"
+            + " where r.roomId = :roomId and r.personId <> :authorId and r.lastReadCreated < :created")
+    int addUnread(@Param("roomId") int roomId,
+                  @Param("authorId") int authorId,
+                  @Param("created") LocalDateTime created,
+                  @Param("count") int count);
+
+    /**
+     * Takes deleted messages of the author created at the same time off the counts of everyone who had not read them.
+     */
+    @Modifying
+    @Query("update ReadMarker r set r.unreadCount = case when r.unreadCount > :count then (r.unreadCount - :count) else 0 end"
+            + " where r.roomId = :roomId and r.personId <> :authorId and r.lastReadCreated < :created")
+    int removeUnread(@Param("roomId") int roomId,
+                     @Param("authorId") int authorId,
+                     @Param("created") LocalDateTime created,
+                     @Param("count") int count);
+
+    /**
+     * Counts again the unread messages of markers set before the time, after older messages were removed in bulk.
+     */
+    @Modifying
+    @Query("update ReadMarker r set r.unreadCount = (select count(m) from Message m"
+            + " where m.roomId = r.roomId and m.created > r.lastReadCreated and m.authorId <> r.personId)"
+            + " where r.lastReadCreated < :before")
+    int recountReadBefore(@Param("before") LocalDateTime before);
+
+    @Modifying
+    @Query("update ReadMarker r set r.unreadCount = 0 where r.roomId = :roomId")
+    int clearRoom(@Param("roomId") int roomId);
+
+    @Modifying
+    @Query("delete from ReadMarker r where r.roomId = :roomId")
+    int deleteAllByRoomId(@Param("roomId") int roomId);
+
+    @Modifying
+    @Query("delete from ReadMarker r where r.roomId in (select ro.id from Room ro where ro.authorId = :authorId)")
+    int deleteAllByRoomAuthorId(@Param("authorId") int authorId);
+
+    @Modifying
+    @Query("delete from ReadMarker r where r.personId = :personId")
+    int deleteAllByPersonId(@Param("personId") int personId);
+}
@@ -1,10 +1,37 @@
 package ru.job4j.chat.repository;
 
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import ru.job4j.chat.domain.Role;
+import ru.job4j.chat.dto.VersionDTO;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
 import java.util.Optional;
+import java.util.Set;
 
-public interface RoleRepository extends CrudRepository<Role, Integer> {
+import static org.hibernate.jpa.QueryHints.HINT_CACHEABLE;
+
+public interface RoleRepository extends CrudRepository<Role, Integer>, ProjectionRepository {
+    @QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
     Optional<Role> findByName(String name);
-}
\ No newline at end of file
+
+    @Query("select r.id from Role r where r.id in :ids")
+    Set<Integer> findExistingIds(@Param("ids") Collection<Integer> ids);
+
+    /**
+     * Version of all roles for ETags. Cached as a query, so with the second-level cache
+     * a conditional GET is answered without a statement until a role changes.
+     */
+    @QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
+    @Query("select new ru.job4j.chat.dto.VersionDTO(max(r.updated), count(r), coalesce(sum(r.id), 0))"
+            + " from Role r")
+    VersionDTO findVersion();
+
+    @QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
+    @Query("select new ru.job4j.chat.dto.VersionDTO(max(r.updated), count(r), coalesce(sum(r.id), 0))"
+            + " from Role r where r.id = :id")
+    VersionDTO findVersionById(@Param("id") int id);
+}
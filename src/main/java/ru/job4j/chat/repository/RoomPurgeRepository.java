@@ -0,0 +1,16 @@
+package ru.job4j.chat.repository;
+
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.repository.CrudRepository;
+import ru.job4j.chat.domain.RoomPurge;
+
+import javax.persistence.LockModeType;
+import java.util.Optional;
+
+public interface RoomPurgeRepository extends CrudRepository<RoomPurge, Integer> {
+    /**
+     * Oldest unfinished purge, locked so that only one instance works on it at a time.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    Optional<RoomPurge> findFirstByStatusOrderById(RoomPurge.Status status);
+}
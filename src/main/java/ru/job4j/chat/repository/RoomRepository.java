@@ -1,13 +1,89 @@
 package ru.job4j.chat.repository;
 
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import ru.job4j.chat.domain.Room;
+import ru.job4j.chat.dto.VersionDTO;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
-public interface RoomRepository extends CrudRepository<Room, Integer> {
-    List<Room> findByAuthorId(int authorId);
-    void deleteAllByAuthorId(int authorId);
+import static org.hibernate.jpa.QueryHints.HINT_CACHEABLE;
+
+/**
+ * Rooms marked as deleted are excluded from every read except findByName,
+ * which must see them while their names are still taken.
+ * findById is a query rather than a lookup, so it is cached as a query
+ * to get the rooms from the second-level cache when that is enabled.
+ */
+public interface RoomRepository extends CrudRepository<Room, Integer>, ProjectionRepository {
+    @Override
+    @Query("select r from Room r where r.deleted = false")
+    Iterable<Room> findAll();
+
+    @Override
+    @QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
+    @Query("select r from Room r where r.id = :id and r.deleted = false")
+    Optional<Room> findById(@Param("id") Integer id);
+
+    @Override
+    @Query("select count(r) > 0 from Room r where r.id = :id and r.deleted = false")
+    boolean existsById(@Param("id") Integer id);
+
+    @Query("select r from Room r where r.authorId = :authorId and r.deleted = false")
+    List<Room> findByAuthorId(@Param("authorId") int authorId);
+
+    @Query("select r from Room r where r.authorId in :authorIds and r.deleted = false")
+    List<Room> findByAuthorIdIn(@Param("authorIds") Collection<Integer> authorIds);
+
+    @QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
     Optional<Room> findByName(String name);
+
+    @Query("select r.id from Room r where r.id in :ids and r.deleted = false")
+    Set<Integer> findExistingIds(@Param("ids") Collection<Integer> ids);
+
+    @Query("select r.id from Room r where r.authorId = :authorId")
+    List<Integer> findIdsByAuthorId(@Param("authorId") int authorId);
+
+    @QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
+    @Query("select new ru.job4j.chat.dto.VersionDTO(max(r.updated), count(r), coalesce(sum(r.id), 0))"
+            + " from Room r where r.deleted = false")
+    VersionDTO findVersion();
+
+    @QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
+    @Query("select new ru.job4j.chat.dto.VersionDTO(max(r.updated), count(r), coalesce(sum(r.id), 0))"
+            + " from Room r where r.id = :id and r.deleted = false")
+    VersionDTO findVersionById(@Param("id") int id);
+
+    @QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
+    @Query("select new ru.job4j.chat.dto.VersionDTO(max(r.updated), count(r), coalesce(sum(r.id), 0))"
+            + " from Room r where r.authorId = :authorId and r.deleted = false")
+    VersionDTO findVersionByAuthorId(@Param("authorId") int authorId);
+
+    /**
+     * Hides the room from reads until RoomPurger removes it.
+     * @return 1 if the room was marked, 0 if it does not exist or is already deleted.
+     */
+    @Modifying
+    @Query("update Room r set r.deleted = true where r.id = :id and r.deleted = false")
+    int markDeleted(@Param("id") int id);
+
+    @Modifying
+    @Query("delete from Room r where r.id = :id")
+    int dropById(@Param("id") int id);
+
+    /**
+     * Deletes all rooms of the person with one statement, without loading them.
+     * Messages of these rooms must be deleted first, see MessageRepository.deleteAllByRoomAuthorId.
+     * @return number of deleted rooms.
+     */
+    @Modifying
+    @Query("delete from Room r where r.authorId = :authorId")
+    int deleteAllByAuthorId(@Param("authorId") int authorId);
 }
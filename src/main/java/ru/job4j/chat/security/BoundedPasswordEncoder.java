@@ -0,0 +1,156 @@
+package ru.job4j.chat.security;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import ru.job4j.chat.exception.PasswordHashingRejectedException;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * BCrypt encoder that hashes on its own bounded pool instead of the request threads.
+ * When all workers are busy and the queue is full, the call fails at once
+ * with PasswordHashingRejectedException, so a burst of sign-ups or logins
+ * cannot take every Tomcat thread.
+ * Micrometer gets timers of the wait in the queue and of hashing, the queue depth and rejections.
+ */
+@ManagedResource(objectName = "ru.job4j.chat:name=PasswordEncoder")
+public class BoundedPasswordEncoder implements PasswordEncoder, MeterBinder {
+    private final BCryptPasswordEncoder delegate;
+    private final ThreadPoolExecutor executor;
+    private final LongAdder hashes = new LongAdder();
+    private final LongAdder hashNanos = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private volatile Timer waitTimer;
+    private volatile Timer hashTimer;
+
+    public BoundedPasswordEncoder(int strength, int threads, int queueCapacity) {
+        this.delegate = new BCryptPasswordEncoder(strength);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+                threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                task -> {
+                    Thread thread = new Thread(task, "bcrypt-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return execute(() -> delegate.encode(rawPassword));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return execute(() -> delegate.matches(rawPassword, encodedPassword));
+    }
+
+    /**
+     * Hashes made with a lower cost than the configured one are rehashed
+     * by Spring Security after the next successful login.
+     */
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        waitTimer = Timer.builder("chat.bcrypt.wait")
+                .description("Time password hashing waited for a bcrypt worker")
+                .publishPercentileHistogram()
+                .register(registry);
+        hashTimer = Timer.builder("chat.bcrypt.hash")
+                .description("Time of hashing or checking a password")
+                .publishPercentileHistogram()
+                .register(registry);
+        Gauge.builder("chat.bcrypt.queue.depth", executor, pool -> pool.getQueue().size())
+                .description("Passwords waiting for a bcrypt worker")
+                .register(registry);
+        FunctionCounter.builder("chat.bcrypt.rejected", rejected, LongAdder::sum)
+                .description("Password hashing rejected because the queue was full")
+                .register(registry);
+    }
+
+    private <T> T execute(Callable<T> hashing) {
+        long submitted = System.nanoTime();
+        try {
+            return executor.submit(() -> {
+                long start = System.nanoTime();
+                record(waitTimer, start - submitted);
+                try {
+                    return hashing.call();
+                } finally {
+                    long nanos = System.nanoTime() - start;
+                    hashNanos.add(nanos);
+                    hashes.increment();
+                    record(hashTimer, nanos);
+                }
+            }).get();
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new PasswordHashingRejectedException("Too many password hashing requests, try again later", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static void record(Timer timer, long nanos) {
+        if (timer != null) {
+            timer.record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @ManagedAttribute
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    @ManagedAttribute
+    public int getActiveThreads() {
+        return executor.getActiveCount();
+    }
+
+    @ManagedAttribute
+    public long getHashCount() {
+        return hashes.sum();
+    }
+
+    @ManagedAttribute
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    @ManagedAttribute
+    public double getAverageHashMillis() {
+        long count = hashes.sum();
+        return count == 0 ? 0 : hashNanos.sum() / 1_000_000.0 / count;
+    }
+
+    public void close() {
+        executor.shutdown();
+    }
+}
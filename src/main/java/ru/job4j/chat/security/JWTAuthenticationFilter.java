@@ -2,6 +2,8 @@ package ru.job4j.chat.security;
 
 import com.auth0.jwt.JWT;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
@@ -9,6 +11,7 @@ import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.core.userdetails.User;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 import ru.job4j.chat.domain.Person;
+import ru.job4j.chat.exception.PasswordHashingRejectedException;
 
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
@@ -48,6 +51,10 @@ public class JWTAuthenticationFilter extends UsernamePasswordAuthenticationFilte
                             creds.getPassword(),
                             new ArrayList<>())
             );
+        } catch (PasswordHashingRejectedException e) {
+            res.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            res.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            return null;
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -1,16 +1,13 @@
 package ru.job4j.chat.security;
 
 import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTVerifier;
 import com.auth0.jwt.algorithms.Algorithm;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.web.authentication.www.BasicAuthenticationFilter;
-import org.springframework.stereotype.Component;
-import ru.job4j.chat.domain.Person;
 import ru.job4j.chat.domain.Role;
-import ru.job4j.chat.repository.PersonRepository;
-import ru.job4j.chat.repository.RoleRepository;
 
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
@@ -23,17 +20,14 @@ import static ru.job4j.chat.security.JWTAuthenticationFilter.HEADER_STRING;
 import static ru.job4j.chat.security.JWTAuthenticationFilter.SECRET;
 import static ru.job4j.chat.security.JWTAuthenticationFilter.TOKEN_PREFIX;
 
-@Component
 public class JWTAuthorizationFilter extends BasicAuthenticationFilter {
-    private PersonRepository personRepository;
-    private RoleRepository roleRepository;
+    private static final JWTVerifier VERIFIER = JWT.require(Algorithm.HMAC512(SECRET.getBytes())).build();
 
-    public JWTAuthorizationFilter(AuthenticationManager authManager,
-                                  PersonRepository personRepository,
-                                  RoleRepository roleRepository) {
+    private final PrincipalCache principalCache;
+
+    public JWTAuthorizationFilter(AuthenticationManager authManager, PrincipalCache principalCache) {
         super(authManager);
-        this.personRepository = personRepository;
-        this.roleRepository = roleRepository;
+        this.principalCache = principalCache;
     }
 
     @Override
@@ -57,15 +51,15 @@ public class JWTAuthorizationFilter extends BasicAuthenticationFilter {
     private UsernamePasswordAuthenticationToken getAuthentication(HttpServletRequest request) {
         String token = request.getHeader(HEADER_STRING);
         if (token != null) {
-            String user = JWT.require(Algorithm.HMAC512(SECRET.getBytes()))
-                    .build()
+            String user = VERIFIER
                     .verify(token.replace(TOKEN_PREFIX, ""))
                     .getSubject();
 
             if (user != null) {
-                Person person = personRepository.findByName(user).get();
-                Role role = roleRepository.findById(person.getRoleId()).get();
-                return new UsernamePasswordAuthenticationToken(user, null, List.of(role));
+                Role role = principalCache.findRole(user);
+                if (role != null) {
+                    return new UsernamePasswordAuthenticationToken(user, null, List.of(role));
+                }
             }
             return null;
         }
@@ -0,0 +1,101 @@
+package ru.job4j.chat.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.job4j.chat.domain.Role;
+import ru.job4j.chat.repository.PersonRepository;
+import ru.job4j.chat.repository.RoleRepository;
+
+import java.time.Duration;
+
+/**
+ * Roles of authenticated persons keyed by the subject of their tokens.
+ * Entries expire after a short time and are evicted when the person or the roles change.
+ * Inside a transaction eviction waits for the commit, otherwise a login running concurrently
+ * could cache the row the transaction is about to replace.
+ * Hits and misses are exported over JMX and as the cache.* meters tagged cache=principal.
+ */
+@Component
+@ManagedResource(objectName = "ru.job4j.chat:name=PrincipalCache")
+public class PrincipalCache {
+    private final PersonRepository personRepository;
+    private final RoleRepository roleRepository;
+    private final Cache<String, Role> roles;
+
+    public PrincipalCache(PersonRepository personRepository,
+                          RoleRepository roleRepository,
+                          @Value("${chat.principal-cache.max-size:10000}") long maxSize,
+                          @Value("${chat.principal-cache.ttl:60s}") Duration ttl) {
+        this.personRepository = personRepository;
+        this.roleRepository = roleRepository;
+        this.roles = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * @param name person's name.
+     * @return role of the person or null if there is no such person.
+     */
+    public Role findRole(String name) {
+        return roles.get(name, key -> personRepository.findByName(key)
+                .flatMap(person -> roleRepository.findById(person.getRoleId()))
+                .orElse(null));
+    }
+
+    public void evict(String name) {
+        afterCommit(() -> roles.invalidate(name));
+    }
+
+    @ManagedOperation
+    public void evictAll() {
+        afterCommit(roles::invalidateAll);
+    }
+
+    @ManagedAttribute
+    public long getHitCount() {
+        return roles.stats().hitCount();
+    }
+
+    @ManagedAttribute
+    public long getMissCount() {
+        return roles.stats().missCount();
+    }
+
+    @ManagedAttribute
+    public long getSize() {
+        return roles.estimatedSize();
+    }
+
+    /**
+     * Exports hits, misses and evictions as the cache.* meters, see MetricsConfig.
+     * @param registry registry to add the meters to.
+     */
+    public void monitor(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, roles, "principal");
+    }
+
+    private static void afterCommit(Runnable eviction) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            eviction.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                eviction.run();
+            }
+        });
+    }
+}
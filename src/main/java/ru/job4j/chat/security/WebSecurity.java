@@ -1,5 +1,6 @@
 package ru.job4j.chat.security;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.http.HttpMethod;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.config.BeanIds;
@@ -13,10 +14,15 @@ import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 import org.springframework.context.annotation.Bean;
-import ru.job4j.chat.repository.PersonRepository;
-import ru.job4j.chat.repository.RoleRepository;
+import ru.job4j.chat.filter.IdempotencyFilter;
+import ru.job4j.chat.filter.IdempotencyStore;
+import ru.job4j.chat.filter.RateLimitFilter;
+import ru.job4j.chat.filter.RateLimiter;
+import ru.job4j.chat.filter.RequestClass;
 import ru.job4j.chat.service.UserDetailsServiceImpl;
 
+import java.util.EnumSet;
+
 import static ru.job4j.chat.security.JWTAuthenticationFilter.SIGN_UP_URL;
 import static ru.job4j.chat.security.JWTAuthenticationFilter.USER_ROLE_URL;
 
@@ -25,8 +31,10 @@ import static ru.job4j.chat.security.JWTAuthenticationFilter.USER_ROLE_URL;
 public class WebSecurity extends WebSecurityConfigurerAdapter {
     private UserDetailsServiceImpl userDetailsService;
     private PasswordEncoder passwordEncoder;
-    private PersonRepository personRepository;
-    private RoleRepository roleRepository;
+    private PrincipalCache principalCache;
+    private IdempotencyStore idempotencyStore;
+    private RateLimiter rateLimiter;
+    private ObjectMapper objectMapper;
 
     @Bean(name = BeanIds.AUTHENTICATION_MANAGER)
     @Override
@@ -37,12 +45,16 @@ public class WebSecurity extends WebSecurityConfigurerAdapter {
     public WebSecurity(
             UserDetailsServiceImpl userDetailsService,
             PasswordEncoder passwordEncoder,
-            PersonRepository personRepository,
-            RoleRepository roleRepository) {
+            PrincipalCache principalCache,
+            IdempotencyStore idempotencyStore,
+            RateLimiter rateLimiter,
+            ObjectMapper objectMapper) {
         this.userDetailsService = userDetailsService;
         this.passwordEncoder = passwordEncoder;
-        this.personRepository = personRepository;
-        this.roleRepository = roleRepository;
+        this.principalCache = principalCache;
+        this.idempotencyStore = idempotencyStore;
+        this.rateLimiter = rateLimiter;
+        this.objectMapper = objectMapper;
     }
 
     @Override
@@ -50,11 +62,17 @@ public class WebSecurity extends WebSecurityConfigurerAdapter {
         http.cors().and().csrf().disable().authorizeRequests()
                 .antMatchers(HttpMethod.POST, SIGN_UP_URL).permitAll()
                 .antMatchers(HttpMethod.GET, USER_ROLE_URL).permitAll()
+                .antMatchers(HttpMethod.GET, "/actuator/health").permitAll()
                 .antMatchers(HttpMethod.POST, "/person/").hasRole("ADMIN")
                 .anyRequest().authenticated()
                 .and()
                 .addFilter(new JWTAuthenticationFilter(authenticationManager()))
-                .addFilter(new JWTAuthorizationFilter(authenticationManagerBean(), personRepository, roleRepository))
+                .addFilter(new JWTAuthorizationFilter(authenticationManagerBean(), principalCache))
+                .addFilterBefore(new RateLimitFilter(rateLimiter, objectMapper, EnumSet.of(RequestClass.AUTH)),
+                        JWTAuthenticationFilter.class)
+                .addFilterAfter(new RateLimitFilter(rateLimiter, objectMapper, EnumSet.of(RequestClass.READ, RequestClass.WRITE)),
+                        JWTAuthorizationFilter.class)
+                .addFilterAfter(new IdempotencyFilter(idempotencyStore, objectMapper), RateLimitFilter.class)
                 .sessionManagement().sessionCreationPolicy(SessionCreationPolicy.STATELESS);
     }
 
@@ -0,0 +1,287 @@
+package ru.job4j.chat.service;
+
+import ru.job4j.chat.domain.Message;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Immutable file of archived messages, see MessageArchive.
+ * The file starts with a header, then come deflate-compressed blocks and an index with an entry
+ * per block, the last bytes are the offset of the index and the magic number again.
+ * A block holds messages of one room sorted by (created, id), and its index entry keeps the room
+ * and the first and last keys, so a read inflates only the blocks it needs.
+ * The file is memory-mapped when opened and never changes afterwards.
+ */
+final class ArchiveSegment {
+    static final Comparator<Message> OLDEST_FIRST = Comparator.comparing(Message::getCreated)
+            .thenComparingInt(Message::getId);
+
+    private static final int MAGIC = 0x4d534753;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = Integer.BYTES * 2;
+    private static final int TRAILER_SIZE = Long.BYTES + Integer.BYTES;
+
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final List<Block> blocks;
+
+    private ArchiveSegment(Path path, MappedByteBuffer buffer) {
+        this.path = path;
+        this.buffer = buffer;
+        this.blocks = Collections.unmodifiableList(readIndex());
+    }
+
+    /**
+     * Writes messages to a new segment file. The file is written under a temporary name,
+     * forced to disk and then renamed, so a segment is either complete or absent.
+     * @param path segment file.
+     * @param messages messages of any rooms.
+     * @param blockSize maximal number of messages in a block.
+     * @return the new segment, opened.
+     */
+    static ArchiveSegment write(Path path, List<Message> messages, int blockSize) throws IOException {
+        List<Message> sorted = new ArrayList<>(messages);
+        sorted.sort(Comparator.comparingInt(Message::getRoomId).thenComparing(OLDEST_FIRST));
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteArrayOutputStream index = new ByteArrayOutputStream();
+            DataOutputStream indexOut = new DataOutputStream(index);
+            writeFully(channel, ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).flip());
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            int blockCount = 0;
+            int from = 0;
+            while (from < sorted.size()) {
+                int roomId = sorted.get(from).getRoomId();
+                int to = from + 1;
+                while (to < sorted.size() && to - from < blockSize && sorted.get(to).getRoomId() == roomId) {
+                    to++;
+                }
+                List<Message> block = sorted.subList(from, to);
+                byte[] raw = encode(block);
+                byte[] compressed = deflate(deflater, raw);
+                long offset = channel.position();
+                writeFully(channel, ByteBuffer.wrap(compressed));
+                indexOut.writeInt(roomId);
+                indexOut.writeInt(block.size());
+                indexOut.writeLong(offset);
+                indexOut.writeInt(compressed.length);
+                indexOut.writeInt(raw.length);
+                writeKey(indexOut, block.get(0));
+                writeKey(indexOut, block.get(block.size() - 1));
+                blockCount++;
+                from = to;
+            }
+            deflater.end();
+            long indexOffset = channel.position();
+            writeFully(channel, ByteBuffer.allocate(Integer.BYTES).putInt(blockCount).flip());
+            writeFully(channel, ByteBuffer.wrap(index.toByteArray()));
+            writeFully(channel, ByteBuffer.allocate(TRAILER_SIZE).putLong(indexOffset).putInt(MAGIC).flip());
+            channel.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE);
+        return open(path);
+    }
+
+    static ArchiveSegment open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new ArchiveSegment(path, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    long size() {
+        return buffer.capacity();
+    }
+
+    List<Block> blocks() {
+        return blocks;
+    }
+
+    /**
+     * Inflates a block of this segment.
+     * @return messages of the block, oldest first.
+     */
+    List<Message> read(Block block) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(buffer.duplicate().position((int) block.offset).limit((int) block.offset + block.length));
+            byte[] raw = new byte[block.rawLength];
+            int length = 0;
+            while (length < raw.length && !inflater.finished()) {
+                length += inflater.inflate(raw, length, raw.length - length);
+            }
+            return decode(ByteBuffer.wrap(raw, 0, length), block.roomId, block.count);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupted block at " + block.offset + " of " + path, e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private List<Block> readIndex() {
+        ByteBuffer data = buffer.duplicate();
+        if (data.capacity() < HEADER_SIZE + TRAILER_SIZE
+                || data.getInt(0) != MAGIC || data.getInt(data.capacity() - Integer.BYTES) != MAGIC) {
+            throw new IllegalStateException("Not an archive segment: " + path);
+        }
+        if (data.getInt(Integer.BYTES) != VERSION) {
+            throw new IllegalStateException("Unknown version of archive segment " + path);
+        }
+        data.position((int) data.getLong(data.capacity() - TRAILER_SIZE));
+        int count = data.getInt();
+        List<Block> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(new Block(this, data));
+        }
+        return result;
+    }
+
+    private static byte[] encode(List<Message> messages) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (Message message : messages) {
+            writeKey(out, message);
+            out.writeInt(message.getAuthorId());
+            byte[] text = message.getText().getBytes(StandardCharsets.UTF_8);
+            out.writeInt(text.length);
+            out.write(text);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static List<Message> decode(ByteBuffer data, int roomId, int count) {
+        List<Message> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            LocalDateTime created = readCreated(data);
+            int id = data.getInt();
+            int authorId = data.getInt();
+            byte[] text = new byte[data.getInt()];
+            data.get(text);
+            messages.add(new Message(id, new String(text, StandardCharsets.UTF_8), created, roomId, authorId, null));
+        }
+        return messages;
+    }
+
+    private static byte[] deflate(Deflater deflater, byte[] raw) {
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2 + 64);
+        byte[] chunk = new byte[8192];
+        while (!deflater.finished()) {
+            out.write(chunk, 0, deflater.deflate(chunk));
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeKey(DataOutputStream out, Message message) throws IOException {
+        out.writeLong(message.getCreated().toEpochSecond(ZoneOffset.UTC));
+        out.writeInt(message.getCreated().getNano());
+        out.writeInt(message.getId());
+    }
+
+    private static LocalDateTime readCreated(ByteBuffer data) {
+        long seconds = data.getLong();
+        return LocalDateTime.ofEpochSecond(seconds, data.getInt(), ZoneOffset.UTC);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            channel.write(data);
+        }
+    }
+
+    /**
+     * Index entry of a compressed block.
+     */
+    static final class Block {
+        private final ArchiveSegment segment;
+        private final int roomId;
+        private final int count;
+        private final long offset;
+        private final int length;
+        private final int rawLength;
+        private final LocalDateTime firstCreated;
+        private final int firstId;
+        private final LocalDateTime lastCreated;
+        private final int lastId;
+
+        /**
+         * Reads the entry from the index of the segment.
+         */
+        Block(ArchiveSegment segment, ByteBuffer index) {
+            this.segment = segment;
+            this.roomId = index.getInt();
+            this.count = index.getInt();
+            this.offset = index.getLong();
+            this.length = index.getInt();
+            this.rawLength = index.getInt();
+            this.firstCreated = readCreated(index);
+            this.firstId = index.getInt();
+            this.lastCreated = readCreated(index);
+            this.lastId = index.getInt();
+        }
+
+        int getRoomId() {
+            return roomId;
+        }
+
+        int getCount() {
+            return count;
+        }
+
+        int getLastId() {
+            return lastId;
+        }
+
+        /**
+         * @return messages of the block, oldest first.
+         */
+        List<Message> read() {
+            return segment.read(this);
+        }
+
+        /**
+         * @return negative, zero or positive as the oldest message of the block is before, at or after the key.
+         */
+        int compareFirstTo(LocalDateTime created, int id) {
+            int result = firstCreated.compareTo(created);
+            return result != 0 ? result : Integer.compare(firstId, id);
+        }
+
+        /**
+         * @return negative, zero or positive as the newest message of the block is before, at or after the key.
+         */
+        int compareLastTo(LocalDateTime created, int id) {
+            int result = lastCreated.compareTo(created);
+            return result != 0 ? result : Integer.compare(lastId, id);
+        }
+
+        static int compareLast(Block left, Block right) {
+            return left.compareLastTo(right.lastCreated, right.lastId);
+        }
+
+        static int compareFirst(Block left, Block right) {
+            return left.compareFirstTo(right.firstCreated, right.firstId);
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package ru.job4j.chat.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+import ru.job4j.chat.domain.Message;
+import ru.job4j.chat.domain.RoomPurge;
+import ru.job4j.chat.event.RoomPurgeEvent;
+
+import javax.annotation.PostConstruct;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Cold storage of old messages, filled by MessageArchiver.
+ * Messages live in append-only segment files in chat.archive.dir, see ArchiveSegment.
+ * The index entries of all blocks are kept in memory grouped by room, which makes a sparse
+ * per-room index: a page of history inflates only the few blocks around its cursor.
+ * Archived messages are read-only; clearing or dropping a room hides its archived messages
+ * with a record in the purge log instead of rewriting segments.
+ * Without chat.archive.dir the archive is off and always empty.
+ */
+@Service
+@ManagedResource(objectName = "ru.job4j.chat:name=MessageArchive")
+public class MessageArchive {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MessageArchive.class);
+    private static final Pattern SEGMENT = Pattern.compile("segment-(\\d+)\\.seg");
+    private static final String PURGE_LOG = "purged.log";
+
+    private final Path dir;
+    private final int blockSize;
+    /**
+     * Blocks of every room, newest first by their last message. Lists are replaced, never changed.
+     */
+    private final Map<Integer, List<ArchiveSegment.Block>> rooms = new ConcurrentHashMap<>();
+    /**
+     * Archived messages of a room with ids up to the value are hidden.
+     */
+    private final Map<Integer, Integer> purgedUpTo = new ConcurrentHashMap<>();
+    private final AtomicLong messages = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private volatile int segments;
+    private long nextSegment = 1;
+
+    public MessageArchive(@Value("${chat.archive.dir:}") String dir,
+                          @Value("${chat.archive.block-size:1000}") int blockSize) {
+        this.dir = dir.isEmpty() ? null : Paths.get(dir);
+        this.blockSize = blockSize;
+    }
+
+    @PostConstruct
+    public synchronized void load() throws IOException {
+        if (dir == null) {
+            return;
+        }
+        Files.createDirectories(dir);
+        List<Path> files;
+        try (Stream<Path> list = Files.list(dir)) {
+            files = list.filter(path -> SEGMENT.matcher(path.getFileName().toString()).matches())
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        for (Path file : files) {
+            Matcher matcher = SEGMENT.matcher(file.getFileName().toString());
+            matcher.matches();
+            nextSegment = Math.max(nextSegment, Long.parseLong(matcher.group(1)) + 1);
+            add(ArchiveSegment.open(file));
+        }
+        Path purgeLog = dir.resolve(PURGE_LOG);
+        if (Files.exists(purgeLog)) {
+            try (DataInputStream in = new DataInputStream(Files.newInputStream(purgeLog))) {
+                while (true) {
+                    int roomId = in.readInt();
+                    purgedUpTo.merge(roomId, in.readInt(), Math::max);
+                }
+            } catch (EOFException e) {
+                /* end of log, a torn last record is ignored */
+            }
+        }
+        LOGGER.info("Loaded {} archived messages from {} segments in {}", messages.get(), segments, dir);
+    }
+
+    @ManagedAttribute
+    public boolean isEnabled() {
+        return dir != null;
+    }
+
+    @ManagedAttribute
+    public int getSegments() {
+        return segments;
+    }
+
+    @ManagedAttribute
+    public long getMessages() {
+        return messages.get();
+    }
+
+    @ManagedAttribute
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    @ManagedAttribute
+    public int getRooms() {
+        return rooms.size();
+    }
+
+    /**
+     * Writes messages to a new segment and makes them visible to readers.
+     * Returns after the segment is on disk, so the caller may delete the messages from the database.
+     * @param batch messages of any rooms.
+     */
+    public synchronized void append(List<Message> batch) {
+        if (dir == null) {
+            throw new IllegalStateException("Message archive is not configured");
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        Path file = dir.resolve(String.format("segment-%012d.seg", nextSegment));
+        try {
+            add(ArchiveSegment.write(file, batch, blockSize));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write archive segment " + file, e);
+        }
+        nextSegment++;
+    }
+
+    /**
+     * Finds archived messages of a room between two keys, newest first.
+     * Blocks entirely outside of the range are not read.
+     * @param roomId room id.
+     * @param before messages older than this one only, or null for the newest.
+     * @param after messages newer than this one only, or null for no lower bound.
+     * @param limit maximal number of messages.
+     * @return messages, newest first.
+     */
+    public List<Message> findBefore(int roomId, Message before, Message after, int limit) {
+        List<ArchiveSegment.Block> blocks = rooms.getOrDefault(roomId, List.of());
+        int hiddenUpTo = purgedUpTo.getOrDefault(roomId, 0);
+        PriorityQueue<Message> found = new PriorityQueue<>(ArchiveSegment.OLDEST_FIRST);
+        Set<Integer> ids = new HashSet<>();
+        for (ArchiveSegment.Block block : blocks) {
+            if (after != null && block.compareLastTo(after.getCreated(), after.getId()) <= 0) {
+                break;
+            }
+            if (found.size() >= limit && block.compareLastTo(found.peek().getCreated(), found.peek().getId()) < 0) {
+                break;
+            }
+            if (before != null && block.compareFirstTo(before.getCreated(), before.getId()) >= 0) {
+                continue;
+            }
+            for (Message message : block.read()) {
+                if (message.getId() <= hiddenUpTo
+                        || before != null && ArchiveSegment.OLDEST_FIRST.compare(message, before) >= 0
+                        || after != null && ArchiveSegment.OLDEST_FIRST.compare(message, after) <= 0
+                        || !ids.add(message.getId())) {
+                    continue;
+                }
+                found.add(message);
+                if (found.size() > limit) {
+                    ids.remove(found.poll().getId());
+                }
+            }
+        }
+        List<Message> result = new ArrayList<>(found);
+        result.sort(ArchiveSegment.OLDEST_FIRST.reversed());
+        return result;
+    }
+
+    /**
+     * Iterates over all archived messages of a room, oldest first.
+     * Blocks are inflated one at a time, unless their key ranges overlap.
+     * @param roomId room id.
+     * @return messages, oldest first.
+     */
+    public Iterator<Message> history(int roomId) {
+        List<ArchiveSegment.Block> blocks = new ArrayList<>(rooms.getOrDefault(roomId, List.of()));
+        blocks.sort(ArchiveSegment.Block::compareFirst);
+        return new HistoryIterator(blocks, purgedUpTo.getOrDefault(roomId, 0));
+    }
+
+    /**
+     * Hides archived messages of a cleared or dropped room. Archived messages are older
+     * than any purge, so all messages archived so far are hidden, whatever the purge bound is.
+     */
+    @EventListener
+    public void onPurge(RoomPurgeEvent event) {
+        RoomPurge purge = event.getPurge();
+        if (dir == null || purge.getStatus() != RoomPurge.Status.DONE) {
+            return;
+        }
+        int roomId = purge.getRoomId();
+        if (!rooms.containsKey(roomId)) {
+            return;
+        }
+        int upTo = rooms.getOrDefault(roomId, List.of()).stream()
+                .mapToInt(ArchiveSegment.Block::getLastId)
+                .max()
+                .orElse(0);
+        if (upTo <= purgedUpTo.getOrDefault(roomId, 0)) {
+            return;
+        }
+        synchronized (this) {
+            try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(dir.resolve(PURGE_LOG),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.SYNC))) {
+                out.writeInt(roomId);
+                out.writeInt(upTo);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not write archive purge log", e);
+            }
+            purgedUpTo.merge(roomId, upTo, Math::max);
+        }
+    }
+
+    private void add(ArchiveSegment segment) {
+        Map<Integer, List<ArchiveSegment.Block>> added = segment.blocks().stream()
+                .collect(Collectors.groupingBy(ArchiveSegment.Block::getRoomId));
+        added.forEach((roomId, blocks) -> rooms.compute(roomId, (id, current) -> {
+            List<ArchiveSegment.Block> merged = new ArrayList<>(current == null ? List.of() : current);
+            merged.addAll(blocks);
+            merged.sort(Collections.reverseOrder(ArchiveSegment.Block::compareLast));
+            return Collections.unmodifiableList(merged);
+        }));
+        messages.addAndGet(segment.blocks().stream().mapToLong(ArchiveSegment.Block::getCount).sum());
+        bytes.addAndGet(segment.size());
+        segments++;
+    }
+
+    /**
+     * K-way merge of blocks sorted by their first keys: a block is inflated only when
+     * its first message may be the next one. A segment written right before a crash
+     * may be archived again; such copies have equal keys, come one after another and are skipped.
+     */
+    private static final class HistoryIterator implements Iterator<Message> {
+        private final List<ArchiveSegment.Block> blocks;
+        private final int hiddenUpTo;
+        private final PriorityQueue<BlockCursor> open = new PriorityQueue<>(
+                (left, right) -> ArchiveSegment.OLDEST_FIRST.compare(left.current(), right.current()));
+        private int nextBlock;
+        private Message next;
+        private int lastId;
+
+        HistoryIterator(List<ArchiveSegment.Block> blocks, int hiddenUpTo) {
+            this.blocks = blocks;
+            this.hiddenUpTo = hiddenUpTo;
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Message next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Message result = next;
+            advance();
+            return result;
+        }
+
+        private void advance() {
+            next = null;
+            while (next == null) {
+                while (nextBlock < blocks.size() && (open.isEmpty()
+                        || blocks.get(nextBlock).compareFirstTo(open.peek().current().getCreated(),
+                        open.peek().current().getId()) <= 0)) {
+                    open.add(new BlockCursor(blocks.get(nextBlock++).read()));
+                }
+                BlockCursor cursor = open.poll();
+                if (cursor == null) {
+                    return;
+                }
+                Message message = cursor.current();
+                if (cursor.advance()) {
+                    open.add(cursor);
+                }
+                if (message.getId() > hiddenUpTo && message.getId() != lastId) {
+                    next = message;
+                    lastId = message.getId();
+                }
+            }
+        }
+    }
+
+    private static final class BlockCursor {
+        private final List<Message> messages;
+        private int position;
+
+        BlockCursor(List<Message> messages) {
+            this.messages = messages;
+        }
+
+        Message current() {
+            return messages.get(position);
+        }
+
+        boolean advance() {
+            return ++position < messages.size();
+        }
+    }
+}
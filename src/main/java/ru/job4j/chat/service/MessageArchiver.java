@@ -0,0 +1,102 @@
+package ru.job4j.chat.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.job4j.chat.domain.Message;
+import ru.job4j.chat.event.MessageArchiveEvent;
+import ru.job4j.chat.repository.MessageRepository;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Moves messages older than chat.archive.after from the database to MessageArchive.
+ * Every batch is first written to a segment and forced to disk and only then deleted
+ * from the database, so a crash in between leaves a copy in both places, never in none.
+ * The rows of a batch stay locked from reading to deleting them, an edit waits and then
+ * finds the message gone instead of being lost with the deleted row.
+ * Archived messages are not announced with MessageEvent, they are still part of the history;
+ * every batch is announced with one MessageArchiveEvent instead.
+ */
+@Service
+@ManagedResource(objectName = "ru.job4j.chat:name=MessageArchiver")
+public class MessageArchiver {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MessageArchiver.class);
+    /**
+     * Keeps the number of bind parameters of a delete statement well below database limits.
+     */
+    private static final int DELETE_CHUNK = 1000;
+
+    private final MessageRepository messageRepository;
+    private final MessageArchive messageArchive;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Duration after;
+    private final int batchSize;
+    private final AtomicLong archived = new AtomicLong();
+
+    public MessageArchiver(MessageRepository messageRepository,
+                           MessageArchive messageArchive,
+                           TransactionTemplate transactionTemplate,
+                           ApplicationEventPublisher eventPublisher,
+                           @Value("${chat.archive.after:90d}") Duration after,
+                           @Value("${chat.archive.batch-size:10000}") int batchSize) {
+        this.messageRepository = messageRepository;
+        this.messageArchive = messageArchive;
+        this.transactionTemplate = transactionTemplate;
+        this.eventPublisher = eventPublisher;
+        this.after = after;
+        this.batchSize = batchSize;
+    }
+
+    @ManagedAttribute
+    public long getArchived() {
+        return archived.get();
+    }
+
+    /**
+     * Archives all messages that are old enough, one batch per segment.
+     */
+    @ManagedOperation
+    @Scheduled(initialDelayString = "${chat.archive.interval-ms:3600000}",
+            fixedDelayString = "${chat.archive.interval-ms:3600000}")
+    public void archive() {
+        if (!messageArchive.isEnabled()) {
+            return;
+        }
+        LocalDateTime before = LocalDateTime.now().minus(after);
+        long total = 0;
+        List<Message> batch;
+        do {
+            batch = transactionTemplate.execute(status -> {
+                List<Message> locked = messageRepository.findCreatedBefore(before, PageRequest.of(0, batchSize));
+                messageArchive.append(locked);
+                List<Integer> ids = locked.stream().map(Message::getId).collect(Collectors.toList());
+                for (int from = 0; from < ids.size(); from += DELETE_CHUNK) {
+                    messageRepository.deleteAllByIdIn(ids.subList(from, Math.min(ids.size(), from + DELETE_CHUNK)));
+                }
+                return locked;
+            });
+            if (!batch.isEmpty()) {
+                eventPublisher.publishEvent(new MessageArchiveEvent(batch));
+            }
+            total += batch.size();
+            archived.addAndGet(batch.size());
+        } while (batch.size() == batchSize);
+        if (total > 0) {
+            LOGGER.info("Archived {} messages created before {}", total, before);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package ru.job4j.chat.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ru.job4j.chat.domain.Message;
+import ru.job4j.chat.repository.MessageRepository;
+
+import javax.persistence.EntityManager;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.stream.Stream;
+
+/**
+ * History of a room, which continues from the database into MessageArchive.
+ * Pages read the archive only when the database rows of the page run out
+ * or when archived messages fall between them.
+ * Exports merge both sources, database rows are read through a cursor and detached
+ * right after they are written, so memory use does not depend on the size of the room.
+ */
+@Service
+public class MessageHistory {
+    private static final int NEW_LINE = '\n';
+
+    private final MessageRepository messageRepository;
+    private final MessageArchive messageArchive;
+    private final EntityManager entityManager;
+    private final ObjectWriter writer;
+    private final Duration exportTimeout;
+
+    public MessageHistory(MessageRepository messageRepository,
+                          MessageArchive messageArchive,
+                          EntityManager entityManager,
+                          ObjectMapper objectMapper,
+                          @Value("${chat.export.timeout:1h}") Duration exportTimeout) {
+        this.messageRepository = messageRepository;
+        this.messageArchive = messageArchive;
+        this.entityManager = entityManager;
+        this.writer = objectMapper.writerFor(Message.class);
+        this.exportTimeout = exportTimeout;
+    }
+
+    /**
+     * @return how long an export may stream, other async requests keep the default timeout.
+     */
+    public Duration getExportTimeout() {
+        return exportTimeout;
+    }
+
+    /**
+     * @param roomId room id.
+     * @param before key of the last message of the previous page, or null for the newest messages.
+     * @param limit maximal number of messages.
+     * @return messages older than the key, newest first.
+     */
+    @Transactional(readOnly = true)
+    public List<Message> findBefore(int roomId, Message before, int limit) {
+        List<Message> hot = before == null
+                ? messageRepository.findByRoomIdOrderByCreatedDescIdDesc(roomId, PageRequest.of(0, limit))
+                : messageRepository.findByRoomIdBefore(roomId, before.getCreated(), before.getId(), limit);
+        Message after = hot.size() < limit ? null : hot.get(hot.size() - 1);
+        List<Message> cold = messageArchive.findBefore(roomId, before, after, limit);
+        if (cold.isEmpty()) {
+            return hot;
+        }
+        List<Message> result = new ArrayList<>(limit);
+        Iterator<Message> newer = merge(hot.iterator(), cold.iterator(), false);
+        while (result.size() < limit && newer.hasNext()) {
+            result.add(newer.next());
+        }
+        return result;
+    }
+
+    /**
+     * Writes the whole history of a room as newline-delimited JSON, oldest first.
+     */
+    @Transactional(readOnly = true)
+    public void exportRoom(int roomId, OutputStream out) {
+        try (Stream<Message> messages = messageRepository.streamAllByRoomId(roomId)) {
+            Iterator<Message> iterator = merge(messages.iterator(), messageArchive.history(roomId), true);
+            boolean first = true;
+            while (iterator.hasNext()) {
+                Message message = iterator.next();
+                out.write(writer.writeValueAsBytes(message));
+                out.write(NEW_LINE);
+                if (entityManager.contains(message)) {
+                    entityManager.detach(message);
+                }
+                if (first) {
+                    out.flush();
+                    first = false;
+                }
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Merges two sorted sequences of messages. A message archived right before a crash
+     * may still be in the database, the copy is skipped.
+     * @param oldestFirst order of both sequences and of the result.
+     */
+    private static Iterator<Message> merge(Iterator<Message> left, Iterator<Message> right, boolean oldestFirst) {
+        return new Iterator<>() {
+            private Message nextLeft = left.hasNext() ? left.next() : null;
+            private Message nextRight = right.hasNext() ? right.next() : null;
+
+            @Override
+            public boolean hasNext() {
+                return nextLeft != null || nextRight != null;
+            }
+
+            @Override
+            public Message next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Message result;
+                if (nextRight == null || nextLeft != null && compare(nextLeft, nextRight) <= 0) {
+                    result = nextLeft;
+                    nextLeft = left.hasNext() ? left.next() : null;
+                } else {
+                    result = nextRight;
+                    nextRight = right.hasNext() ? right.next() : null;
+                }
+                if (nextRight != null && nextRight.getId() == result.getId()) {
+                    nextRight = right.hasNext() ? right.next() : null;
+                }
+                return result;
+            }
+
+            private int compare(Message first, Message second) {
+                int result = ArchiveSegment.OLDEST_FIRST.compare(first, second);
+                return oldestFirst ? result : -result;
+            }
+        };
+    }
+}
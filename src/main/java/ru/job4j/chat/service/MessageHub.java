@@ -0,0 +1,146 @@
+package ru.job4j.chat.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import ru.job4j.chat.event.MessageEvent;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pushes committed message events to the subscribers of a room as server-sent events.
+ * Every subscriber has a bounded queue drained by a small dispatcher pool.
+ * A subscriber whose queue is full is disconnected and has to resubscribe
+ * and catch up through the message history.
+ */
+@Service
+@ManagedResource(objectName = "ru.job4j.chat:name=MessageHub")
+public class MessageHub {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MessageHub.class);
+
+    private final Map<Integer, Set<Subscriber>> rooms = new ConcurrentHashMap<>();
+    private final AtomicInteger subscribers = new AtomicInteger();
+    private final AtomicLong disconnectedSlowConsumers = new AtomicLong();
+    private final ExecutorService dispatcher;
+    private final int queueCapacity;
+    private final long timeoutMillis;
+
+    public MessageHub(@Value("${chat.hub.queue-capacity:256}") int queueCapacity,
+                      @Value("${chat.hub.dispatch-threads:4}") int dispatchThreads,
+                      @Value("${chat.hub.timeout:30m}") Duration timeout) {
+        this.queueCapacity = queueCapacity;
+        this.timeoutMillis = timeout.toMillis();
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.dispatcher = Executors.newFixedThreadPool(dispatchThreads, task -> {
+            Thread thread = new Thread(task, "message-hub-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public SseEmitter subscribe(int roomId) {
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        Subscriber subscriber = new Subscriber(roomId, emitter, new ArrayBlockingQueue<>(queueCapacity));
+        rooms.compute(roomId, (id, set) -> {
+            Set<Subscriber> roomSubscribers = set == null ? ConcurrentHashMap.newKeySet() : set;
+            roomSubscribers.add(subscriber);
+            return roomSubscribers;
+        });
+        subscribers.incrementAndGet();
+        emitter.onCompletion(() -> remove(subscriber));
+        emitter.onTimeout(() -> remove(subscriber));
+        emitter.onError(e -> remove(subscriber));
+        return emitter;
+    }
+
+    @TransactionalEventListener
+    public void onMessage(MessageEvent event) {
+        Set<Subscriber> roomSubscribers = rooms.get(event.getMessage().getRoomId());
+        if (roomSubscribers == null) {
+            return;
+        }
+        for (Subscriber subscriber : roomSubscribers) {
+            if (!subscriber.queue.offer(event)) {
+                disconnectedSlowConsumers.incrementAndGet();
+                LOGGER.warn("Disconnecting slow subscriber of room {}", subscriber.roomId);
+                remove(subscriber);
+                subscriber.emitter.complete();
+            } else if (subscriber.scheduled.compareAndSet(false, true)) {
+                dispatcher.execute(() -> drain(subscriber));
+            }
+        }
+    }
+
+    private void drain(Subscriber subscriber) {
+        do {
+            MessageEvent event;
+            while ((event = subscriber.queue.poll()) != null) {
+                try {
+                    subscriber.emitter.send(SseEmitter.event()
+                            .name(event.getType().name().toLowerCase())
+                            .id(String.valueOf(event.getMessage().getId()))
+                            .data(event.getMessage(), MediaType.APPLICATION_JSON));
+                } catch (IOException | IllegalStateException e) {
+                    remove(subscriber);
+                    subscriber.queue.clear();
+                    return;
+                }
+            }
+            subscriber.scheduled.set(false);
+        } while (!subscriber.queue.isEmpty() && subscriber.scheduled.compareAndSet(false, true));
+    }
+
+    private void remove(Subscriber subscriber) {
+        Set<Subscriber> roomSubscribers = rooms.get(subscriber.roomId);
+        if (roomSubscribers != null && roomSubscribers.remove(subscriber)) {
+            subscribers.decrementAndGet();
+            rooms.computeIfPresent(subscriber.roomId, (id, set) -> set.isEmpty() ? null : set);
+        }
+    }
+
+    @ManagedAttribute
+    public int getSubscribers() {
+        return subscribers.get();
+    }
+
+    @ManagedAttribute
+    public long getDisconnectedSlowConsumers() {
+        return disconnectedSlowConsumers.get();
+    }
+
+    @PreDestroy
+    public void close() {
+        dispatcher.shutdownNow();
+    }
+
+    private static class Subscriber {
+        private final int roomId;
+        private final SseEmitter emitter;
+        private final BlockingQueue<MessageEvent> queue;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        Subscriber(int roomId, SseEmitter emitter, BlockingQueue<MessageEvent> queue) {
+            this.roomId = roomId;
+            this.emitter = emitter;
+            this.queue = queue;
+        }
+    }
+}
@@ -0,0 +1,712 @@
+package ru.job4j.chat.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.job4j.chat.domain.Message;
+import ru.job4j.chat.domain.RoomPurge;
+import ru.job4j.chat.event.MessageArchiveEvent;
+import ru.job4j.chat.event.MessageEvent;
+import ru.job4j.chat.event.MessageRetentionEvent;
+import ru.job4j.chat.event.RoomPurgeEvent;
+import ru.job4j.chat.repository.MessageRepository;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory inverted index over message text, one partition per room.
+ * Postings are message ids in ascending order with term frequencies,
+ * every message is also kept with the minute it was created for retention,
+ * queries intersect them starting from the rarest term and rank hits by tf-idf.
+ *
+ * The index is updated from committed message events. Deletions and edits that
+ * remove words are not always reflected at once, so hits are checked against
+ * the database before they are returned.
+ *
+ * The index is written to a snapshot file from time to time, if chat.search.snapshot-path is set.
+ * On startup it is loaded from the snapshot and only messages after the snapshot watermark or updated
+ * after the snapshot was taken are read from the database. Messages deleted meanwhile are found
+ * by reading the ids below the watermark, which is far cheaper than reading the messages.
+ * Without a snapshot the whole table is read in the background; until then results may be incomplete.
+ */
+@Service
+@ManagedResource(objectName = "ru.job4j.chat:name=MessageIndex")
+public class MessageIndex {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MessageIndex.class);
+    private static final int SNAPSHOT_MAGIC = 0x4d534958;
+    private static final int SNAPSHOT_VERSION = 3;
+    /**
+     * Ids are not committed strictly in order, so catch-up starts a bit below the watermark.
+     */
+    private static final int CATCH_UP_MARGIN = 10_000;
+    /**
+     * Updates are stamped before commit, so catch-up also re-reads those stamped a bit before the snapshot.
+     */
+    private static final long CATCH_UP_SECONDS = 600;
+    private static final int CATCH_UP_CHUNK = 10_000;
+    private static final int MIN_TOKEN_LENGTH = 2;
+    private static final int MAX_TOKEN_LENGTH = 64;
+
+    private final MessageRepository messageRepository;
+    private final Path snapshotPath;
+    private final Map<Integer, RoomIndex> rooms = new ConcurrentHashMap<>();
+    private final AtomicInteger watermark = new AtomicInteger();
+    private volatile boolean ready;
+
+    public MessageIndex(MessageRepository messageRepository,
+                        @Value("${chat.search.snapshot-path:}") String snapshotPath) {
+        this.messageRepository = messageRepository;
+        this.snapshotPath = snapshotPath.isEmpty() ? null : Paths.get(snapshotPath);
+    }
+
+    /**
+     * Finds messages that contain all words of the query.
+     * @param query words to search for.
+     * @param roomId room to search in, or null for all rooms.
+     * @param limit maximal number of results.
+     * @return best matching messages first.
+     */
+    public List<Message> search(String query, Integer roomId, int limit) {
+        List<String> terms = new ArrayList<>(tokenize(query).keySet());
+        if (terms.isEmpty()) {
+            throw new IllegalArgumentException("Query must contain at least one word of " + MIN_TOKEN_LENGTH + " letters");
+        }
+        PriorityQueue<Hit> hits = new PriorityQueue<>(Hit.WORST_FIRST);
+        int candidates = limit * 2;
+        if (roomId != null) {
+            RoomIndex room = rooms.get(roomId);
+            if (room != null) {
+                room.search(terms, candidates, hits);
+            }
+        } else {
+            rooms.values().forEach(room -> room.search(terms, candidates, hits));
+        }
+        List<Hit> ranked = new ArrayList<>(hits);
+        ranked.sort(Hit.WORST_FIRST.reversed());
+        Map<Integer, Message> found = new HashMap<>();
+        messageRepository.findAllById(ranked.stream().map(hit -> hit.messageId).collect(Collectors.toList()))
+                .forEach(message -> found.put(message.getId(), message));
+        return ranked.stream()
+                .map(hit -> found.get(hit.messageId))
+                .filter(message -> message != null && tokenize(message.getText()).keySet().containsAll(terms))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    @TransactionalEventListener
+    public void onMessage(MessageEvent event) {
+        Message message = event.getMessage();
+        if (event.getType() == MessageEvent.Type.DELETED) {
+            RoomIndex room = rooms.get(message.getRoomId());
+            if (room != null) {
+                room.remove(message.getId(), tokenize(message.getText()).keySet());
+            }
+        } else {
+            add(message);
+        }
+    }
+
+    @EventListener
+    public void onPurge(RoomPurgeEvent event) {
+        RoomPurge purge = event.getPurge();
+        if (purge.getStatus() != RoomPurge.Status.DONE) {
+            return;
+        }
+        rooms.remove(purge.getRoomId());
+        if (!purge.isDropRoom()) {
+            /* a cleared room keeps the messages written after the clear, usually a few */
+            messageRepository.findByRoomId(purge.getRoomId()).forEach(this::add);
+        }
+    }
+
+    /**
+     * Archived messages are no longer in the database, so search would only find and drop them.
+     */
+    @EventListener
+    public void onArchive(MessageArchiveEvent event) {
+        event.getMessages().stream()
+                .collect(Collectors.groupingBy(Message::getRoomId,
+                        Collectors.mapping(Message::getId, Collectors.toList())))
+                .forEach((roomId, ids) -> {
+                    RoomIndex room = rooms.get(roomId);
+                    if (room != null) {
+                        room.removeAll(ids.stream().mapToInt(Integer::intValue).sorted().toArray());
+                    }
+                });
+    }
+
+    /**
+     * Partitions of old months were dropped, their messages are removed from every room.
+     */
+    @EventListener
+    public void onRetention(MessageRetentionEvent event) {
+        int before = minute(event.getBefore());
+        rooms.values().forEach(room -> room.removeCreatedBefore(before));
+    }
+
+    public void removeRooms(Collection<Integer> roomIds) {
+        roomIds.forEach(rooms::remove);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        Thread loader = new Thread(this::load, "message-index-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    /**
+     * Writes the index to the snapshot file, if one is configured.
+     */
+    @Scheduled(initialDelayString = "${chat.search.snapshot-interval-ms:600000}",
+            fixedDelayString = "${chat.search.snapshot-interval-ms:600000}")
+    public void snapshot() {
+        if (snapshotPath == null || !ready) {
+            return;
+        }
+        try {
+            writeSnapshot();
+        } catch (IOException e) {
+            LOGGER.error("Could not write message index snapshot to {}", snapshotPath, e);
+        }
+    }
+
+    @ManagedAttribute
+    public boolean isReady() {
+        return ready;
+    }
+
+    @ManagedAttribute
+    public int getWatermark() {
+        return watermark.get();
+    }
+
+    @ManagedAttribute
+    public int getRooms() {
+        return rooms.size();
+    }
+
+    @ManagedAttribute
+    public long getDocuments() {
+        return rooms.values().stream().mapToLong(room -> room.documents.size).sum();
+    }
+
+    /**
+     * Splits text into lower case words of letters and digits.
+     * @return words with the number of their occurrences.
+     */
+    static Map<String, Integer> tokenize(String text) {
+        Map<String, Integer> tokens = new HashMap<>();
+        int length = text.length();
+        int start = -1;
+        for (int i = 0; i <= length; i++) {
+            boolean letter = i < length && Character.isLetterOrDigit(text.charAt(i));
+            if (letter && start < 0) {
+                start = i;
+            } else if (!letter && start >= 0) {
+                int tokenLength = i - start;
+                if (tokenLength >= MIN_TOKEN_LENGTH && tokenLength <= MAX_TOKEN_LENGTH) {
+                    tokens.merge(text.substring(start, i).toLowerCase(), 1, Integer::sum);
+                }
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    private void add(Message message) {
+        rooms.computeIfAbsent(message.getRoomId(), id -> new RoomIndex())
+                .add(message.getId(), minute(message.getCreated()), tokenize(message.getText()));
+        watermark.accumulateAndGet(message.getId(), Math::max);
+    }
+
+    /**
+     * Removes messages up to the snapshot watermark that were deleted after the snapshot was taken.
+     * A message committed late below the watermark may be removed as well, catch-up reads it again.
+     */
+    private void removeDeleted(int upTo) {
+        BitSet existing = new BitSet(upTo + 1);
+        List<Integer> chunk = messageRepository.findIdsBetween(0, upTo, PageRequest.of(0, CATCH_UP_CHUNK));
+        while (!chunk.isEmpty()) {
+            chunk.forEach(existing::set);
+            chunk = messageRepository.findIdsBetween(chunk.get(chunk.size() - 1), upTo, PageRequest.of(0, CATCH_UP_CHUNK));
+        }
+        rooms.values().forEach(room -> room.retain(existing, upTo));
+    }
+
+    private static int minute(LocalDateTime time) {
+        return (int) (time.toEpochSecond(ZoneOffset.UTC) / 60);
+    }
+
+    private void load() {
+        try {
+            Checkpoint checkpoint = snapshotPath != null && Files.exists(snapshotPath) ? readSnapshot() : null;
+            if (checkpoint == null) {
+                List<Message> chunk = messageRepository.findByIdGreaterThanOrderById(0, PageRequest.of(0, CATCH_UP_CHUNK));
+                while (!chunk.isEmpty()) {
+                    chunk.forEach(this::add);
+                    int last = chunk.get(chunk.size() - 1).getId();
+                    chunk = messageRepository.findByIdGreaterThanOrderById(last, PageRequest.of(0, CATCH_UP_CHUNK));
+                }
+            } else {
+                removeDeleted(checkpoint.watermark);
+                int from = Math.max(0, checkpoint.watermark - CATCH_UP_MARGIN);
+                LocalDateTime since = checkpoint.taken.minusSeconds(CATCH_UP_SECONDS);
+                List<Message> chunk = messageRepository.findChangedSince(0, from, since, PageRequest.of(0, CATCH_UP_CHUNK));
+                while (!chunk.isEmpty()) {
+                    chunk.forEach(this::add);
+                    int last = chunk.get(chunk.size() - 1).getId();
+                    chunk = messageRepository.findChangedSince(last, from, since, PageRequest.of(0, CATCH_UP_CHUNK));
+                }
+            }
+            ready = true;
+            LOGGER.info("Message index is ready, {} messages in {} rooms", getDocuments(), rooms.size());
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Could not load message index", e);
+        }
+    }
+
+    /**
+     * @return watermark and time of the snapshot, or null if it has an unknown format and everything has to be read.
+     */
+    private Checkpoint readSnapshot() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotPath)))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+                LOGGER.warn("Ignoring message index snapshot {} of unknown format", snapshotPath);
+                return null;
+            }
+            int snapshotWatermark = in.readInt();
+            LocalDateTime taken = LocalDateTime.ofEpochSecond(in.readLong(), 0, ZoneOffset.UTC);
+            int roomCount = in.readInt();
+            for (int i = 0; i < roomCount; i++) {
+                int roomId = in.readInt();
+                rooms.computeIfAbsent(roomId, id -> new RoomIndex()).read(in);
+            }
+            watermark.accumulateAndGet(snapshotWatermark, Math::max);
+            return new Checkpoint(snapshotWatermark, taken);
+        }
+    }
+
+    private void writeSnapshot() throws IOException {
+        Path temporary = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+        int snapshotWatermark = watermark.get();
+        LocalDateTime taken = LocalDateTime.now();
+        List<Map.Entry<Integer, RoomIndex>> entries = new ArrayList<>(rooms.entrySet());
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeInt(snapshotWatermark);
+            out.writeLong(taken.toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(entries.size());
+            for (Map.Entry<Integer, RoomIndex> entry : entries) {
+                out.writeInt(entry.getKey());
+                entry.getValue().write(out);
+            }
+        }
+        Files.move(temporary, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static final class Checkpoint {
+        private final int watermark;
+        private final LocalDateTime taken;
+
+        Checkpoint(int watermark, LocalDateTime taken) {
+            this.watermark = watermark;
+            this.taken = taken;
+        }
+    }
+
+    private static final class Hit {
+        static final Comparator<Hit> WORST_FIRST = Comparator.<Hit>comparingDouble(hit -> hit.score)
+                .thenComparingInt(hit -> hit.messageId);
+
+        private final int messageId;
+        private final double score;
+
+        Hit(int messageId, double score) {
+            this.messageId = messageId;
+            this.score = score;
+        }
+    }
+
+    /**
+     * Index of one room. Searches share the read lock, updates take the write lock.
+     */
+    private static final class RoomIndex {
+        private final Map<String, Postings> terms = new HashMap<>();
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private Postings documents = Postings.documents();
+
+        void add(int messageId, int minute, Map<String, Integer> tokens) {
+            lock.writeLock().lock();
+            try {
+                documents.add(messageId, 1, minute);
+                for (Map.Entry<String, Integer> token : tokens.entrySet()) {
+                    terms.computeIfAbsent(token.getKey(), term -> new Postings()).add(messageId, token.getValue());
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        void remove(int messageId, Set<String> tokens) {
+            lock.writeLock().lock();
+            try {
+                documents.remove(messageId);
+                for (String token : tokens) {
+                    Postings postings = terms.get(token);
+                    if (postings != null && postings.remove(messageId) && postings.size == 0) {
+                        terms.remove(token);
+                    }
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        /**
+         * @param messageIds ascending ids.
+         */
+        void removeAll(int[] messageIds) {
+            lock.writeLock().lock();
+            try {
+                documents.removeAll(messageIds);
+                terms.values().removeIf(postings -> postings.removeAll(messageIds) == 0);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        /**
+         * Removes messages up to the id that are not in the set.
+         */
+        void retain(BitSet existing, int upTo) {
+            lock.writeLock().lock();
+            try {
+                int[] messageIds = documents.missing(existing, upTo);
+                if (messageIds.length > 0) {
+                    documents.removeAll(messageIds);
+                    terms.values().removeIf(postings -> postings.removeAll(messageIds) == 0);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        /**
+         * @param minute minute since the epoch, messages created before it are removed.
+         */
+        void removeCreatedBefore(int minute) {
+            lock.writeLock().lock();
+            try {
+                int[] messageIds = documents.createdBefore(minute);
+                if (messageIds.length > 0) {
+                    documents.removeAll(messageIds);
+                    terms.values().removeIf(postings -> postings.removeAll(messageIds) == 0);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        /**
+         * Adds messages that contain all terms to the hits, keeping at most limit best of them.
+         */
+        void search(List<String> queryTerms, int limit, PriorityQueue<Hit> hits) {
+            lock.readLock().lock();
+            try {
+                List<Postings> lists = new ArrayList<>(queryTerms.size());
+                for (String term : queryTerms) {
+                    Postings postings = terms.get(term);
+                    if (postings == null) {
+                        return;
+                    }
+                    lists.add(postings);
+                }
+                lists.sort(Comparator.comparingInt(postings -> postings.size));
+                double[] idf = new double[lists.size()];
+                for (int i = 0; i < idf.length; i++) {
+                    idf[i] = Math.log(1 + (double) Math.max(documents.size, lists.get(i).size) / lists.get(i).size);
+                }
+                int[] cursors = new int[lists.size()];
+                Postings rarest = lists.get(0);
+                for (int i = 0; i < rarest.size; i++) {
+                    int messageId = rarest.ids[i];
+                    double score = weight(rarest.frequencies[i]) * idf[0];
+                    boolean matches = true;
+                    for (int j = 1; j < lists.size() && matches; j++) {
+                        Postings other = lists.get(j);
+                        int position = Arrays.binarySearch(other.ids, cursors[j], other.size, messageId);
+                        matches = position >= 0;
+                        cursors[j] = matches ? position + 1 : -position - 1;
+                        if (matches) {
+                            score += weight(other.frequencies[position]) * idf[j];
+                        }
+                    }
+                    if (matches) {
+                        collect(hits, new Hit(messageId, score), limit);
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            lock.readLock().lock();
+            try {
+                documents.write(out);
+                out.writeInt(terms.size());
+                for (Map.Entry<String, Postings> entry : terms.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    entry.getValue().write(out);
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        void read(DataInputStream in) throws IOException {
+            lock.writeLock().lock();
+            try {
+                documents = Postings.read(in, true);
+                int termCount = in.readInt();
+                for (int i = 0; i < termCount; i++) {
+                    terms.put(in.readUTF(), Postings.read(in, false));
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private static double weight(byte frequency) {
+            return 1 + Math.log(frequency);
+        }
+
+        private static void collect(PriorityQueue<Hit> hits, Hit hit, int limit) {
+            if (hits.size() < limit) {
+                hits.add(hit);
+            } else if (Hit.WORST_FIRST.compare(hit, hits.peek()) > 0) {
+                hits.poll();
+                hits.add(hit);
+            }
+        }
+    }
+
+    /**
+     * Ascending message ids with the number of occurrences of the term, capped at 127.
+     * The list of all messages of a room also keeps the minute each message was created.
+     */
+    private static final class Postings {
+        private int[] ids = new int[4];
+        private byte[] frequencies = new byte[4];
+        private int[] minutes;
+        private int size;
+
+        static Postings documents() {
+            Postings postings = new Postings();
+            postings.minutes = new int[postings.ids.length];
+            return postings;
+        }
+
+        boolean add(int messageId, int frequency) {
+            return add(messageId, frequency, 0);
+        }
+
+        /**
+         * @param minute creation minute, kept only by the list of all messages.
+         * @return true if the message was not in the list before.
+         */
+        boolean add(int messageId, int frequency, int minute) {
+            byte capped = (byte) Math.min(frequency, Byte.MAX_VALUE);
+            int position = size == 0 || ids[size - 1] < messageId
+                    ? -size - 1
+                    : Arrays.binarySearch(ids, 0, size, messageId);
+            if (position >= 0) {
+                frequencies[position] = capped;
+                if (minutes != null) {
+                    minutes[position] = minute;
+                }
+                return false;
+            }
+            position = -position - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+                if (minutes != null) {
+                    minutes = Arrays.copyOf(minutes, size * 2);
+                }
+            }
+            System.arraycopy(ids, position, ids, position + 1, size - position);
+            System.arraycopy(frequencies, position, frequencies, position + 1, size - position);
+            ids[position] = messageId;
+            frequencies[position] = capped;
+            if (minutes != null) {
+                System.arraycopy(minutes, position, minutes, position + 1, size - position);
+                minutes[position] = minute;
+            }
+            size++;
+            return true;
+        }
+
+        boolean remove(int messageId) {
+            int position = Arrays.binarySearch(ids, 0, size, messageId);
+            if (position < 0) {
+                return false;
+            }
+            System.arraycopy(ids, position + 1, ids, position, size - position - 1);
+            System.arraycopy(frequencies, position + 1, frequencies, position, size - position - 1);
+            if (minutes != null) {
+                System.arraycopy(minutes, position + 1, minutes, position, size - position - 1);
+            }
+            size--;
+            return true;
+        }
+
+        /**
+         * Removes the given ids in one pass over the list.
+         * @param messageIds ascending ids.
+         * @return number of remaining ids.
+         */
+        int removeAll(int[] messageIds) {
+            int kept = 0;
+            int next = 0;
+            for (int i = 0; i < size; i++) {
+                while (next < messageIds.length && messageIds[next] < ids[i]) {
+                    next++;
+                }
+                if (next < messageIds.length && messageIds[next] == ids[i]) {
+                    continue;
+                }
+                ids[kept] = ids[i];
+                frequencies[kept] = frequencies[i];
+                if (minutes != null) {
+                    minutes[kept] = minutes[i];
+                }
+                kept++;
+            }
+            size = kept;
+            return size;
+        }
+
+        /**
+         * @return ascending ids of messages created before the minute.
+         */
+        int[] createdBefore(int minute) {
+            int[] result = new int[size];
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                if (minutes[i] < minute) {
+                    result[count++] = ids[i];
+                }
+            }
+            return Arrays.copyOf(result, count);
+        }
+
+        /**
+         * @return ascending ids up to the given one that are not in the set.
+         */
+        int[] missing(BitSet existing, int upTo) {
+            int[] result = new int[size];
+            int count = 0;
+            for (int i = 0; i < size && ids[i] <= upTo; i++) {
+                if (!existing.get(ids[i])) {
+                    result[count++] = ids[i];
+                }
+            }
+            return Arrays.copyOf(result, count);
+        }
+
+        /**
+         * Ids are written as deltas in a variable length encoding, which keeps snapshots small.
+         */
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(size);
+            int previous = 0;
+            for (int i = 0; i < size; i++) {
+                writeVarInt(out, ids[i] - previous);
+                previous = ids[i];
+            }
+            out.write(frequencies, 0, size);
+            if (minutes != null) {
+                for (int i = 0; i < size; i++) {
+                    out.writeInt(minutes[i]);
+                }
+            }
+        }
+
+        static Postings read(DataInputStream in, boolean withMinutes) throws IOException {
+            Postings postings = new Postings();
+            int size = in.readInt();
+            postings.ids = new int[Math.max(size, 4)];
+            postings.frequencies = new byte[postings.ids.length];
+            int previous = 0;
+            for (int i = 0; i < size; i++) {
+                previous += readVarInt(in);
+                postings.ids[i] = previous;
+            }
+            in.readFully(postings.frequencies, 0, size);
+            if (withMinutes) {
+                postings.minutes = new int[postings.ids.length];
+                for (int i = 0; i < size; i++) {
+                    postings.minutes[i] = in.readInt();
+                }
+            }
+            postings.size = size;
+            return postings;
+        }
+
+        private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+            while ((value & ~0x7f) != 0) {
+                out.writeByte((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            out.writeByte(value);
+        }
+
+        private static int readVarInt(DataInputStream in) throws IOException {
+            int value = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = in.readUnsignedByte();
+                value |= (b & 0x7f) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package ru.job4j.chat.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.job4j.chat.domain.Message;
+import ru.job4j.chat.event.MessageEvent;
+import ru.job4j.chat.exception.MessageWriteRejectedException;
+import ru.job4j.chat.repository.MessageRepository;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Saves new messages and announces changes of messages.
+ * With chat.group-commit.enabled new messages of concurrent requests are queued
+ * and saved by one thread in a single transaction per batch, so many requests share one commit.
+ * A batch is flushed when it has chat.group-commit.batch-size messages
+ * or chat.group-commit.linger has passed since its first message.
+ * The caller returns only after the batch is committed, so an acknowledged message is never lost.
+ */
+@Service
+@ManagedResource(objectName = "ru.job4j.chat:name=MessageWriter")
+public class MessageWriter {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MessageWriter.class);
+    private static final long IDLE_POLL_MILLIS = 100;
+    /**
+     * A request gives up on its batch after this long, the message may still be saved later.
+     */
+    private static final long SAVE_TIMEOUT_SECONDS = 30;
+
+    private final MessageRepository messageRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean groupCommit;
+    private final int batchSize;
+    private final long lingerNanos;
+    private final BlockingQueue<Pending> queue;
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder messages = new LongAdder();
+    /**
+     * Requests hold the read lock while they check running and queue a message,
+     * close takes the write lock to stop, so nothing is queued after the flusher has stopped.
+     */
+    private final ReadWriteLock state = new ReentrantReadWriteLock();
+    private volatile boolean running;
+    private Thread flusher;
+
+    public MessageWriter(MessageRepository messageRepository,
+                         ApplicationEventPublisher eventPublisher,
+                         TransactionTemplate transactionTemplate,
+                         @Value("${chat.group-commit.enabled:false}") boolean groupCommit,
+                         @Value("${chat.group-commit.batch-size:100}") int batchSize,
+                         @Value("${chat.group-commit.linger:2ms}") Duration linger,
+                         @Value("${chat.group-commit.queue-capacity:10000}") int queueCapacity) {
+        this.messageRepository = messageRepository;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = transactionTemplate;
+        this.groupCommit = groupCommit;
+        this.batchSize = batchSize;
+        this.lingerNanos = linger.toNanos();
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (groupCommit) {
+            running = true;
+            flusher = new Thread(this::flushLoop, "message-writer");
+            flusher.setDaemon(true);
+            flusher.start();
+        }
+    }
+
+    /**
+     * Stops taking messages and waits until the queued ones are saved.
+     */
+    @PreDestroy
+    public void close() throws InterruptedException {
+        state.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            state.writeLock().unlock();
+        }
+        if (flusher != null) {
+            flusher.join();
+            List<Pending> late = new ArrayList<>();
+            queue.drainTo(late);
+            late.forEach(pending -> pending.saved.completeExceptionally(
+                    new MessageWriteRejectedException("Application is shutting down")));
+        }
+    }
+
+    /**
+     * Saves a new message and publishes its CREATED event in the same transaction.
+     * Must not be called in a transaction when group commit is on,
+     * otherwise the caller holds a connection while waiting for the batch.
+     * @param message new message, an id sent by the client is ignored.
+     * @return saved message, committed when group commit is on.
+     */
+    public Message create(Message message) {
+        /* with an id save would merge and overwrite the existing message */
+        message.setId(0);
+        if (!groupCommit) {
+            return transactionTemplate.execute(status -> save(message));
+        }
+        Pending pending = new Pending(message);
+        boolean queued;
+        state.readLock().lock();
+        try {
+            queued = running && queue.offer(pending);
+        } finally {
+            state.readLock().unlock();
+        }
+        if (!queued) {
+            throw new MessageWriteRejectedException("Too many messages are waiting to be saved, try again later");
+        }
+        try {
+            return pending.saved.get(SAVE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            throw new MessageWriteRejectedException("Message was not saved in time, it may still be saved");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Publishes a change of a message, joins the caller's transaction.
+     */
+    public void publish(MessageEvent.Type type, Message message) {
+        eventPublisher.publishEvent(new MessageEvent(type, message));
+    }
+
+    @ManagedAttribute
+    public boolean isGroupCommit() {
+        return groupCommit;
+    }
+
+    @ManagedAttribute
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    @ManagedAttribute
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    @ManagedAttribute
+    public long getMessageCount() {
+        return messages.sum();
+    }
+
+    private Message save(Message message) {
+        Message saved = messageRepository.save(message);
+        publish(MessageEvent.Type.CREATED, saved);
+        return saved;
+    }
+
+    private void flushLoop() {
+        List<Pending> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + lingerNanos;
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long left = deadline - System.nanoTime();
+                    if (batch.size() == batchSize || left <= 0) {
+                        break;
+                    }
+                    Pending next = queue.poll(left, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                LOGGER.error("Group commit failed", e);
+                batch.forEach(pending -> pending.saved.completeExceptionally(e));
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Saves the batch in one transaction. If that fails, every message is retried
+     * in its own transaction, so one invalid message does not fail the others.
+     */
+    private void flush(List<Pending> batch) {
+        List<Message> saved;
+        try {
+            saved = transactionTemplate.execute(status -> {
+                List<Message> result = new ArrayList<>(batch.size());
+                batch.forEach(pending -> result.add(pending.message));
+                messageRepository.saveAllInBatches(result);
+                result.forEach(message -> publish(MessageEvent.Type.CREATED, message));
+                return result;
+            });
+        } catch (RuntimeException e) {
+            LOGGER.warn("Batch of {} messages failed, saving them one by one", batch.size(), e);
+            for (Pending pending : batch) {
+                pending.message.setId(0);
+                try {
+                    pending.saved.complete(transactionTemplate.execute(status -> save(pending.message)));
+                } catch (RuntimeException failure) {
+                    pending.saved.completeExceptionally(failure);
+                }
+            }
+            return;
+        }
+        batches.increment();
+        messages.add(saved.size());
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).saved.complete(saved.get(i));
+        }
+    }
+
+    private static class Pending {
+        private final Message message;
+        private final CompletableFuture<Message> saved = new CompletableFuture<>();
+
+        Pending(Message message) {
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package ru.job4j.chat.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.job4j.chat.event.MessageRetentionEvent;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps monthly partitions of the message table on PostgreSQL, see db/schema.sql.
+ * Creates partitions for chat.partitions.months-ahead months ahead, so inserts never
+ * land in the default partition, and removes partitions older than
+ * chat.partitions.retention-months, which is much cheaper than deleting their rows.
+ * Removed partitions are dropped or, with chat.partitions.retention-action=detach,
+ * detached and left as standalone tables. Does nothing when the table is not partitioned.
+ */
+@Service
+@ManagedResource(objectName = "ru.job4j.chat:name=PartitionManager")
+public class PartitionManager {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PartitionManager.class);
+    private static final Pattern PARTITION = Pattern.compile("message_p(\\d{6})");
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int monthsAhead;
+    private final int retentionMonths;
+    private final boolean detach;
+    /**
+     * Partitions that could not be created, the warning is logged once per partition.
+     */
+    private final Set<String> failed = ConcurrentHashMap.newKeySet();
+    private volatile Boolean partitioned;
+
+    public PartitionManager(JdbcTemplate jdbcTemplate,
+                            ApplicationEventPublisher eventPublisher,
+                            @Value("${chat.partitions.months-ahead:3}") int monthsAhead,
+                            @Value("${chat.partitions.retention-months:0}") int retentionMonths,
+                            @Value("${chat.partitions.retention-action:drop}") String retentionAction) {
+        if (!"drop".equals(retentionAction) && !"detach".equals(retentionAction)) {
+            throw new IllegalArgumentException("Retention action must be drop or detach");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.eventPublisher = eventPublisher;
+        this.monthsAhead = monthsAhead;
+        this.retentionMonths = retentionMonths;
+        this.detach = "detach".equals(retentionAction);
+    }
+
+    /**
+     * Creates missing partitions and applies retention, runs at start and then periodically.
+     */
+    @Scheduled(initialDelay = 0, fixedDelayString = "${chat.partitions.check-interval-ms:3600000}")
+    public void maintain() {
+        if (!isPartitioned()) {
+            return;
+        }
+        YearMonth now = YearMonth.now();
+        for (int i = 0; i <= monthsAhead; i++) {
+            create(now.plusMonths(i));
+        }
+        if (retentionMonths > 0) {
+            applyRetention(now.minusMonths(retentionMonths));
+        }
+    }
+
+    @ManagedAttribute
+    public boolean isPartitioned() {
+        if (partitioned == null) {
+            boolean postgresql = Boolean.TRUE.equals(jdbcTemplate.execute((ConnectionCallback<Boolean>) connection ->
+                    "PostgreSQL".equals(connection.getMetaData().getDatabaseProductName())));
+            partitioned = postgresql && Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                    "SELECT count(*) > 0 FROM pg_class WHERE relname = 'message' AND relkind = 'p'", Boolean.class));
+            if (!partitioned) {
+                LOGGER.info("Message table is not partitioned, partition maintenance is off");
+            }
+        }
+        return partitioned;
+    }
+
+    @ManagedOperation
+    public List<String> partitions() {
+        return jdbcTemplate.queryForList(
+                "SELECT c.relname FROM pg_inherits i"
+                        + " JOIN pg_class c ON c.oid = i.inhrelid"
+                        + " JOIN pg_class p ON p.oid = i.inhparent"
+                        + " WHERE p.relname = 'message' ORDER BY c.relname", String.class);
+    }
+
+    private void create(YearMonth month) {
+        String name = "message_p" + month.format(SUFFIX);
+        LocalDate from = month.atDay(1);
+        try {
+            jdbcTemplate.execute(String.format(
+                    "CREATE TABLE IF NOT EXISTS %s PARTITION OF message FOR VALUES FROM ('%s') TO ('%s')",
+                    name, from, from.plusMonths(1)));
+            failed.remove(name);
+        } catch (DataAccessException e) {
+            /* the default partition already has rows of this month */
+            if (failed.add(name)) {
+                LOGGER.warn("Cannot create partition {}: {}", name, e.getMostSpecificCause().getMessage());
+            } else {
+                LOGGER.debug("Cannot create partition {}", name, e);
+            }
+        }
+    }
+
+    /**
+     * @param partitions names of the partitions of the message table.
+     * @param oldestKept the oldest month to keep.
+     * @return monthly partitions of the months before the oldest kept one, other tables are never removed.
+     */
+    static List<String> expired(List<String> partitions, YearMonth oldestKept) {
+        List<String> expired = new ArrayList<>();
+        for (String name : partitions) {
+            Matcher matcher = PARTITION.matcher(name);
+            if (matcher.matches() && YearMonth.parse(matcher.group(1), SUFFIX).isBefore(oldestKept)) {
+                expired.add(name);
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Removes partitions of the months before the oldest kept one.
+     */
+    private void applyRetention(YearMonth oldestKept) {
+        boolean removed = false;
+        for (String name : expired(partitions(), oldestKept)) {
+            jdbcTemplate.execute("ALTER TABLE message DETACH PARTITION " + name);
+            if (!detach) {
+                jdbcTemplate.execute("DROP TABLE " + name);
+            }
+            LOGGER.info("Partition {} is {} by retention", name, detach ? "detached" : "dropped");
+            removed = true;
+        }
+        if (removed) {
+            eventPublisher.publishEvent(new MessageRetentionEvent(oldestKept.atDay(1).atStartOfDay()));
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package ru.job4j.chat.service;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ru.job4j.chat.domain.Person;
+import ru.job4j.chat.repository.PersonRepository;
+import ru.job4j.chat.security.PrincipalCache;
+
+/**
+ * Removes a person with everything that belongs to them: rooms, messages of these rooms and read markers.
+ * Cached principals and references are evicted once the removal commits.
+ */
+@Service
+public class PersonRemover {
+    private final PersonRepository personRepository;
+    private final RoomRemover roomRemover;
+    private final ReadMarkers readMarkers;
+    private final ReferenceValidator referenceValidator;
+    private final PrincipalCache principalCache;
+
+    public PersonRemover(PersonRepository personRepository,
+                         RoomRemover roomRemover,
+                         ReadMarkers readMarkers,
+                         ReferenceValidator referenceValidator,
+                         PrincipalCache principalCache) {
+        this.personRepository = personRepository;
+        this.roomRemover = roomRemover;
+        this.readMarkers = readMarkers;
+        this.referenceValidator = referenceValidator;
+        this.principalCache = principalCache;
+    }
+
+    @Transactional
+    public void remove(int id) {
+        Person person = new Person();
+        person.setId(id);
+        personRepository.findById(id).ifPresent(p -> principalCache.evict(p.getName()));
+        roomRemover.removeAllOfAuthor(id);
+        readMarkers.forgetPerson(id);
+        personRepository.delete(person);
+        referenceValidator.evictPerson(id);
+    }
+}
@@ -0,0 +1,94 @@
+package ru.job4j.chat.service;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+import ru.job4j.chat.domain.Person;
+import ru.job4j.chat.dto.PersonDTO;
+import ru.job4j.chat.repository.PersonRepository;
+import ru.job4j.chat.security.PrincipalCache;
+
+/**
+ * Saves persons with new passwords. Passwords are hashed before the transaction starts,
+ * so a request waiting for the bcrypt pool does not hold a database connection meanwhile.
+ * Callers must not run in a transaction themselves.
+ */
+@Service
+public class PersonWriter {
+    private final PersonRepository personRepository;
+    private final PasswordEncoder encoder;
+    private final PrincipalCache principalCache;
+    private final TransactionTemplate transactionTemplate;
+
+    public PersonWriter(PersonRepository personRepository,
+                        PasswordEncoder encoder,
+                        PrincipalCache principalCache,
+                        TransactionTemplate transactionTemplate) {
+        this.personRepository = personRepository;
+        this.encoder = encoder;
+        this.principalCache = principalCache;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    /**
+     * @param person new person with the raw password.
+     * @return saved person.
+     */
+    public Person create(Person person) {
+        person.setPassword(encoder.encode(person.getPassword()));
+        return personRepository.save(person);
+    }
+
+    /**
+     * Replaces the person's properties except the role.
+     * @param person person with new properties and the raw password.
+     */
+    public void update(Person person) {
+        String password = encoder.encode(person.getPassword());
+        transactionTemplate.executeWithoutResult(status -> {
+            Person personInDb = find(person.getId());
+            person.setRoleId(personInDb.getRoleId());
+            person.setPassword(password);
+            principalCache.evict(personInDb.getName());
+            principalCache.evict(person.getName());
+            personRepository.save(person);
+        });
+    }
+
+    /**
+     * Changes the fields that are set in the patch.
+     * @param id person id.
+     * @param patch checked new values, the password is raw.
+     * @return changed person.
+     */
+    public Person patch(int id, PersonDTO patch) {
+        String password = patch.getPassword() == null ? null : encoder.encode(patch.getPassword());
+        return transactionTemplate.execute(status -> {
+            Person person = find(id);
+            principalCache.evict(person.getName());
+            if (patch.getName() != null) {
+                person.setName(patch.getName());
+                principalCache.evict(patch.getName());
+            }
+            if (password != null) {
+                person.setPassword(password);
+            }
+            if (patch.getCreated() != null) {
+                person.setCreated(patch.getCreated());
+            }
+            if (patch.getRoleId() != 0) {
+                person.setRoleId(patch.getRoleId());
+            }
+            return personRepository.save(person);
+        });
+    }
+
+    private Person find(int id) {
+        return personRepository.findById(id)
+                .orElseThrow(() -> new ResponseStatusException(
+                        HttpStatus.NOT_FOUND, "Person with id = " + id + " not found"
+                ));
+    }
+}
@@ -0,0 +1,202 @@
+package ru.job4j.chat.service;
+
+import lombok.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+import ru.job4j.chat.domain.Message;
+import ru.job4j.chat.domain.Person;
+import ru.job4j.chat.domain.ReadMarker;
+import ru.job4j.chat.event.MessageEvent;
+import ru.job4j.chat.event.MessageRetentionEvent;
+import ru.job4j.chat.repository.MessageRepository;
+import ru.job4j.chat.repository.PersonRepository;
+import ru.job4j.chat.repository.ReadMarkerRepository;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read markers of persons and their unread counts.
+ * Counts are counted once when a marker is set and then changed incrementally:
+ * message events of a transaction are grouped by room, author, type and creation time
+ * and applied with one update per group right before the transaction commits.
+ * Messages are compared by creation time, the order rooms show them in.
+ */
+@Service
+public class ReadMarkers {
+    private final ReadMarkerRepository readMarkerRepository;
+    private final MessageRepository messageRepository;
+    private final PersonRepository personRepository;
+    private final TransactionTemplate newTransaction;
+
+    public ReadMarkers(ReadMarkerRepository readMarkerRepository,
+                       MessageRepository messageRepository,
+                       PersonRepository personRepository,
+                       PlatformTransactionManager transactionManager) {
+        this.readMarkerRepository = readMarkerRepository;
+        this.messageRepository = messageRepository;
+        this.personRepository = personRepository;
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Marks the room as read by the person up to the message.
+     * The marker is locked before its count is taken, so a message transaction committing meanwhile
+     * either is counted or adds its message to the marker after this one commits, never neither.
+     * A missing marker is created in its own transaction first, so that others can see and wait for it.
+     * @param personName name of the authenticated person.
+     * @param roomId room id.
+     * @param messageId id of the last read message of this room.
+     * @return updated marker.
+     */
+    @Transactional
+    public ReadMarker markRead(String personName, int roomId, int messageId) {
+        Person person = personRepository.findByName(personName)
+                .orElseThrow(() -> new ResponseStatusException(
+                        HttpStatus.NOT_FOUND, "Person with name = " + personName + " not found"
+                ));
+        Message message = messageRepository.findById(messageId)
+                .filter(m -> m.getRoomId() == roomId)
+                .orElseThrow(() -> new ResponseStatusException(
+                        HttpStatus.NOT_FOUND, "Message with id = " + messageId + " not found in room " + roomId
+                ));
+        ReadMarker marker = readMarkerRepository.findLockedByPersonIdAndRoomId(person.getId(), roomId)
+                .orElseGet(() -> {
+                    create(person.getId(), message);
+                    return readMarkerRepository.findLockedByPersonIdAndRoomId(person.getId(), roomId).orElseThrow();
+                });
+        marker.setLastReadMessageId(message.getId());
+        marker.setLastReadCreated(message.getCreated());
+        marker.setUnreadCount((int) messageRepository.countUnread(roomId, message.getCreated(), person.getId()));
+        return readMarkerRepository.save(marker);
+    }
+
+    /**
+     * @param personName name of the authenticated person.
+     * @param personId id of the person whose markers are requested, it must be the authenticated person.
+     * @return markers ordered by room id.
+     */
+    public List<ReadMarker> findByPerson(String personName, int personId) {
+        Person person = personRepository.findByName(personName)
+                .orElseThrow(() -> new ResponseStatusException(
+                        HttpStatus.NOT_FOUND, "Person with name = " + personName + " not found"
+                ));
+        if (person.getId() != personId) {
+            throw new ResponseStatusException(
+                    HttpStatus.FORBIDDEN, "Unread counts of person with id = " + personId + " belong to another person");
+        }
+        return readMarkerRepository.findByPersonIdOrderByRoomId(personId);
+    }
+
+    /**
+     * Collects created and deleted messages of the current transaction.
+     * Outside of a transaction the change is applied at once.
+     */
+    @EventListener
+    public void onMessage(MessageEvent event) {
+        if (event.getType() == MessageEvent.Type.UPDATED) {
+            return;
+        }
+        Message message = event.getMessage();
+        Group group = new Group(event.getType(), message.getRoomId(), message.getAuthorId(), message.getCreated());
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            apply(Map.of(group, 1));
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        Map<Group, Integer> changes = (Map<Group, Integer>) TransactionSynchronizationManager.getResource(this);
+        if (changes == null) {
+            Map<Group, Integer> pending = new HashMap<>();
+            TransactionSynchronizationManager.bindResource(this, pending);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    apply(pending);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResource(ReadMarkers.this);
+                }
+            });
+            changes = pending;
+        }
+        changes.merge(group, 1, Integer::sum);
+    }
+
+    /**
+     * Partitions are dropped without a MessageEvent per message, so markers that may have counted
+     * the removed messages, those set before the oldest kept one, are counted again.
+     */
+    @EventListener
+    @Transactional
+    public void onRetention(MessageRetentionEvent event) {
+        readMarkerRepository.recountReadBefore(event.getBefore());
+    }
+
+    /**
+     * Sets unread counts of the room to zero after all its messages were scheduled for removal.
+     */
+    public void clearRoom(int roomId) {
+        readMarkerRepository.clearRoom(roomId);
+    }
+
+    public void forgetRoom(int roomId) {
+        readMarkerRepository.deleteAllByRoomId(roomId);
+    }
+
+    public void forgetRoomsOfAuthor(int authorId) {
+        readMarkerRepository.deleteAllByRoomAuthorId(authorId);
+    }
+
+    public void forgetPerson(int personId) {
+        readMarkerRepository.deleteAllByPersonId(personId);
+    }
+
+    /**
+     * Creates the marker of the person at the message with no unread messages.
+     * A marker created concurrently by another request is used as it is.
+     */
+    private void create(int personId, Message message) {
+        try {
+            newTransaction.executeWithoutResult(status -> {
+                ReadMarker marker = new ReadMarker(personId, message.getRoomId());
+                marker.setLastReadMessageId(message.getId());
+                marker.setLastReadCreated(message.getCreated());
+                readMarkerRepository.save(marker);
+            });
+        } catch (DataIntegrityViolationException e) {
+            /* the other request has created it */
+        }
+    }
+
+    private void apply(Map<Group, Integer> changes) {
+        changes.forEach((group, count) -> {
+            if (group.getType() == MessageEvent.Type.CREATED) {
+                readMarkerRepository.addUnread(group.getRoomId(), group.getAuthorId(), group.getCreated(), count);
+            } else {
+                readMarkerRepository.removeUnread(group.getRoomId(), group.getAuthorId(), group.getCreated(), count);
+            }
+        });
+    }
+
+    @Value
+    private static class Group {
+        private final MessageEvent.Type type;
+        private final int roomId;
+        private final int authorId;
+        private final LocalDateTime created;
+    }
+}
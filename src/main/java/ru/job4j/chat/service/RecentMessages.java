@@ -0,0 +1,138 @@
+package ru.job4j.chat.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.context.event.EventListener;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.job4j.chat.domain.Message;
+import ru.job4j.chat.event.MessageEvent;
+import ru.job4j.chat.event.MessageRetentionEvent;
+import ru.job4j.chat.event.RoomPurgeEvent;
+import ru.job4j.chat.repository.MessageRepository;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Newest messages of recently viewed rooms.
+ * A room is loaded with one query on first access and then kept up to date
+ * by committed message events, so viewing a hot room does not touch the database.
+ * The number of rooms is bounded, cold rooms are evicted.
+ */
+@Service
+@ManagedResource(objectName = "ru.job4j.chat:name=RecentMessages")
+public class RecentMessages {
+    private static final Comparator<Message> NEWEST_FIRST = Comparator.comparing(Message::getCreated)
+            .thenComparingInt(Message::getId)
+            .reversed();
+
+    private final MessageRepository messageRepository;
+    private final Cache<Integer, List<Message>> rooms;
+    private final int capacity;
+
+    public RecentMessages(MessageRepository messageRepository,
+                          @Value("${chat.recent.capacity:50}") int capacity,
+                          @Value("${chat.recent.max-rooms:1000}") long maxRooms) {
+        this.messageRepository = messageRepository;
+        this.capacity = capacity;
+        this.rooms = Caffeine.newBuilder()
+                .maximumSize(maxRooms)
+                .recordStats()
+                .build();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @param roomId room id.
+     * @param limit number of messages, from 1 to capacity.
+     * @return newest messages of the room, newest first.
+     */
+    public List<Message> recent(int roomId, int limit) {
+        if (limit < 1 || limit > capacity) {
+            throw new IllegalArgumentException("Recent must be from 1 to " + capacity);
+        }
+        List<Message> buffer = rooms.get(roomId, id -> new ArrayList<>(
+                messageRepository.findByRoomIdOrderByCreatedDescIdDesc(id, PageRequest.of(0, capacity))
+        ));
+        synchronized (buffer) {
+            return new ArrayList<>(buffer.subList(0, Math.min(limit, buffer.size())));
+        }
+    }
+
+    /**
+     * Applies a committed change to the buffer of the room, if the room is buffered.
+     * A message deleted from a full buffer, or moved out of it, leaves a gap
+     * that only the database can fill, so such a room is reloaded next time.
+     * Runs under the cache entry lock, so it waits for a concurrent load of the same room.
+     */
+    @TransactionalEventListener
+    public void onMessage(MessageEvent event) {
+        Message message = event.getMessage();
+        rooms.asMap().computeIfPresent(message.getRoomId(), (roomId, buffer) -> {
+            synchronized (buffer) {
+                boolean full = buffer.size() == capacity;
+                boolean replaced = buffer.removeIf(m -> m.getId() == message.getId());
+                if (event.getType() == MessageEvent.Type.DELETED) {
+                    return replaced && full ? null : buffer;
+                }
+                int index = 0;
+                while (index < buffer.size() && NEWEST_FIRST.compare(buffer.get(index), message) < 0) {
+                    index++;
+                }
+                if (index >= capacity) {
+                    return replaced && full ? null : buffer;
+                }
+                buffer.add(index, message);
+                if (buffer.size() > capacity) {
+                    buffer.remove(buffer.size() - 1);
+                }
+            }
+            return buffer;
+        });
+    }
+
+    @EventListener
+    public void onPurge(RoomPurgeEvent event) {
+        evict(event.getPurge().getRoomId());
+    }
+
+    /**
+     * Old partitions may have held messages of any room, so every room is reloaded.
+     */
+    @EventListener
+    public void onRetention(MessageRetentionEvent event) {
+        rooms.invalidateAll();
+    }
+
+    /**
+     * Forgets the room after its messages were removed in bulk.
+     * @param roomId room id.
+     */
+    public void evict(int roomId) {
+        rooms.invalidate(roomId);
+    }
+
+    @ManagedAttribute
+    public long getHitCount() {
+        return rooms.stats().hitCount();
+    }
+
+    @ManagedAttribute
+    public long getMissCount() {
+        return rooms.stats().missCount();
+    }
+
+    @ManagedAttribute
+    public long getRooms() {
+        return rooms.estimatedSize();
+    }
+}
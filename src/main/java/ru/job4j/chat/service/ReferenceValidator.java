@@ -0,0 +1,188 @@
+package ru.job4j.chat.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.server.ResponseStatusException;
+import ru.job4j.chat.repository.PersonRepository;
+import ru.job4j.chat.repository.RoleRepository;
+import ru.job4j.chat.repository.RoomRepository;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+import java.util.stream.Collectors;
+
+/**
+ * Checks that referenced persons, rooms and roles exist.
+ * Positive answers are remembered for a short time, so repeated writes
+ * to the same room by the same author do not query the database every time.
+ * At most MAX_CACHED_IDS ids of a kind are remembered, rarely used ones are forgotten first.
+ * Inside a transaction eviction waits for the commit, otherwise a concurrent check could
+ * remember a row again that the transaction is about to delete.
+ */
+@Service
+public class ReferenceValidator {
+    private static final int MAX_CACHED_IDS = 10_000;
+
+    private final ExistenceCache persons;
+    private final ExistenceCache rooms;
+    private final ExistenceCache roles;
+
+    public ReferenceValidator(PersonRepository personRepository,
+                              RoomRepository roomRepository,
+                              RoleRepository roleRepository,
+                              @Value("${chat.reference-cache.ttl-ms:5000}") long ttlMillis) {
+        this.persons = new ExistenceCache(personRepository::existsById, personRepository::findExistingIds, ttlMillis);
+        this.rooms = new ExistenceCache(roomRepository::existsById, roomRepository::findExistingIds, ttlMillis);
+        this.roles = new ExistenceCache(roleRepository::existsById, roleRepository::findExistingIds, ttlMillis);
+    }
+
+    public void checkPersonExists(int id) {
+        if (!persons.exists(id)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Person with id = " + id + " not found");
+        }
+    }
+
+    public void checkRoomExists(int id) {
+        if (!rooms.exists(id)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Room with id = " + id + " not found");
+        }
+    }
+
+    public void checkRoleExists(int id) {
+        if (!roles.exists(id)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Role with id = " + id + " not found");
+        }
+    }
+
+    /**
+     * Checks many persons with at most one query.
+     * @param ids person ids.
+     */
+    public void checkPersonsExist(Set<Integer> ids) {
+        Set<Integer> missing = persons.missing(ids);
+        if (!missing.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Persons with ids = " + missing + " not found");
+        }
+    }
+
+    /**
+     * @param ids room ids.
+     * @return those of the rooms that exist and are not deleted, with at most one query.
+     */
+    public Set<Integer> existingRooms(Set<Integer> ids) {
+        Set<Integer> existing = new HashSet<>(ids);
+        existing.removeAll(rooms.missing(ids));
+        return existing;
+    }
+
+    /**
+     * Checks many rooms with at most one query.
+     * @param ids room ids.
+     */
+    public void checkRoomsExist(Set<Integer> ids) {
+        Set<Integer> missing = rooms.missing(ids);
+        if (!missing.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Rooms with ids = " + missing + " not found");
+        }
+    }
+
+    /**
+     * Exports hits and misses as the cache.* meters tagged cache=person, room and role, see MetricsConfig.
+     * @param registry registry to add the meters to.
+     */
+    public void monitor(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, persons.existing, "person");
+        CaffeineCacheMetrics.monitor(registry, rooms.existing, "room");
+        CaffeineCacheMetrics.monitor(registry, roles.existing, "role");
+    }
+
+    public void evictPerson(int id) {
+        persons.evict(id);
+    }
+
+    public void evictRoom(int id) {
+        rooms.evict(id);
+    }
+
+    public void evictRole(int id) {
+        roles.evict(id);
+    }
+
+    private static class ExistenceCache {
+        private final IntPredicate loader;
+        private final Function<Collection<Integer>, Set<Integer>> batchLoader;
+        private final boolean enabled;
+        private final Cache<Integer, Boolean> existing;
+
+        ExistenceCache(IntPredicate loader, Function<Collection<Integer>, Set<Integer>> batchLoader, long ttlMillis) {
+            this.loader = loader;
+            this.batchLoader = batchLoader;
+            this.enabled = ttlMillis > 0;
+            this.existing = Caffeine.newBuilder()
+                    .maximumSize(MAX_CACHED_IDS)
+                    .expireAfterWrite(Duration.ofMillis(Math.max(ttlMillis, 0)))
+                    .recordStats()
+                    .build();
+        }
+
+        boolean exists(int id) {
+            if (isCached(id)) {
+                return true;
+            }
+            boolean exists = loader.test(id);
+            if (exists) {
+                remember(id);
+            } else {
+                existing.invalidate(id);
+            }
+            return exists;
+        }
+
+        Set<Integer> missing(Set<Integer> ids) {
+            Set<Integer> unknown = ids.stream()
+                    .filter(id -> !isCached(id))
+                    .collect(Collectors.toSet());
+            if (unknown.isEmpty()) {
+                return unknown;
+            }
+            Set<Integer> found = batchLoader.apply(unknown);
+            found.forEach(this::remember);
+            unknown.removeAll(found);
+            return unknown;
+        }
+
+        private boolean isCached(int id) {
+            return existing.getIfPresent(id) != null;
+        }
+
+        private void remember(int id) {
+            if (enabled) {
+                existing.put(id, Boolean.TRUE);
+            }
+        }
+
+        void evict(int id) {
+            if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+                existing.invalidate(id);
+                return;
+            }
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    existing.invalidate(id);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package ru.job4j.chat.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.job4j.chat.domain.RoomPurge;
+import ru.job4j.chat.event.RoomPurgeEvent;
+import ru.job4j.chat.repository.MessageRepository;
+import ru.job4j.chat.repository.RoomPurgeRepository;
+import ru.job4j.chat.repository.RoomRepository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Removes messages of deleted or cleared rooms in the background.
+ * Every chunk is deleted in its own short transaction together with the progress update,
+ * and chunks are separated by a pause, so a huge room never holds one long transaction.
+ * When there is nothing to purge the table is polled rarely, purges scheduled
+ * by this instance wake the purger up right after commit.
+ */
+@Service
+public class RoomPurger {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RoomPurger.class);
+
+    private final RoomPurgeRepository purgeRepository;
+    private final MessageRepository messageRepository;
+    private final RoomRepository roomRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int batchSize;
+    private final long idlePollNanos;
+    private volatile long idleUntil = System.nanoTime();
+
+    public RoomPurger(RoomPurgeRepository purgeRepository,
+                      MessageRepository messageRepository,
+                      RoomRepository roomRepository,
+                      TransactionTemplate transactionTemplate,
+                      ApplicationEventPublisher eventPublisher,
+                      @Value("${chat.purge.batch-size:1000}") int batchSize,
+                      @Value("${chat.purge.idle-poll-ms:10000}") long idlePollMillis) {
+        this.purgeRepository = purgeRepository;
+        this.messageRepository = messageRepository;
+        this.roomRepository = roomRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.eventPublisher = eventPublisher;
+        this.batchSize = batchSize;
+        this.idlePollNanos = TimeUnit.MILLISECONDS.toNanos(idlePollMillis);
+    }
+
+    /**
+     * Schedules removal of all current messages of the room.
+     * Messages created after this call are kept unless the room is dropped.
+     * Joins the caller's transaction, so the purge is saved only if the caller commits.
+     * @param roomId room id.
+     * @param dropRoom whether to remove the room itself at the end.
+     * @return saved purge.
+     */
+    @Transactional
+    public RoomPurge schedule(int roomId, boolean dropRoom) {
+        RoomPurge purge = purgeRepository.save(new RoomPurge(roomId, dropRoom ? null : LocalDateTime.now(), dropRoom));
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                idleUntil = System.nanoTime();
+            }
+        });
+        return purge;
+    }
+
+    public Optional<RoomPurge> findById(int id) {
+        return purgeRepository.findById(id);
+    }
+
+    /**
+     * Deletes the next chunk of the oldest unfinished purge
+     * and publishes a RoomPurgeEvent once the chunk is committed.
+     */
+    @Scheduled(initialDelayString = "${chat.purge.pause-ms:100}", fixedDelayString = "${chat.purge.pause-ms:100}")
+    public void purgeNextChunk() {
+        long now = System.nanoTime();
+        if (idleUntil - now > 0) {
+            return;
+        }
+        try {
+            Optional<RoomPurge> purged = transactionTemplate.execute(status -> {
+                Optional<RoomPurge> purge = purgeRepository.findFirstByStatusOrderById(RoomPurge.Status.PENDING);
+                purge.ifPresent(this::purgeChunk);
+                return purge;
+            });
+            if (purged.isPresent()) {
+                eventPublisher.publishEvent(new RoomPurgeEvent(purged.get()));
+            } else {
+                idleUntil = now + idlePollNanos;
+            }
+        } catch (RuntimeException e) {
+            LOGGER.error("Room purge failed, will retry", e);
+        }
+    }
+
+    private void purgeChunk(RoomPurge purge) {
+        int deleted = purge.getUpTo() == null
+                ? messageRepository.deleteChunk(purge.getRoomId(), batchSize)
+                : messageRepository.deleteChunkUpTo(purge.getRoomId(), purge.getUpTo(), batchSize);
+        purge.setPurged(purge.getPurged() + deleted);
+        if (deleted < batchSize) {
+            if (purge.isDropRoom()) {
+                roomRepository.dropById(purge.getRoomId());
+            }
+            purge.setStatus(RoomPurge.Status.DONE);
+            purge.setFinished(LocalDateTime.now());
+        }
+        purgeRepository.save(purge);
+    }
+}
@@ -0,0 +1,60 @@
+package ru.job4j.chat.service;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.job4j.chat.repository.MessageRepository;
+import ru.job4j.chat.repository.RoomRepository;
+
+import java.util.List;
+
+/**
+ * Removes all rooms of a person with their messages and read markers.
+ * The number of statements does not depend on the number of rooms.
+ */
+@Service
+public class RoomRemover {
+    private final RoomRepository roomRepository;
+    private final MessageRepository messageRepository;
+    private final ReferenceValidator referenceValidator;
+    private final RecentMessages recentMessages;
+    private final ReadMarkers readMarkers;
+    private final MessageIndex messageIndex;
+
+    public RoomRemover(RoomRepository roomRepository,
+                       MessageRepository messageRepository,
+                       ReferenceValidator referenceValidator,
+                       RecentMessages recentMessages,
+                       ReadMarkers readMarkers,
+                       MessageIndex messageIndex) {
+        this.roomRepository = roomRepository;
+        this.messageRepository = messageRepository;
+        this.referenceValidator = referenceValidator;
+        this.recentMessages = recentMessages;
+        this.readMarkers = readMarkers;
+        this.messageIndex = messageIndex;
+    }
+
+    /**
+     * Joins the caller's transaction, so the rooms are removed together with whatever the caller does.
+     * Caches and the search index forget the rooms once the transaction commits,
+     * before that readers may still see the rooms and a rollback keeps them.
+     * @param authorId person id.
+     */
+    @Transactional
+    public void removeAllOfAuthor(int authorId) {
+        List<Integer> roomIds = roomRepository.findIdsByAuthorId(authorId);
+        readMarkers.forgetRoomsOfAuthor(authorId);
+        messageRepository.deleteAllByRoomAuthorId(authorId);
+        roomRepository.deleteAllByAuthorId(authorId);
+        roomIds.forEach(referenceValidator::evictRoom);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                roomIds.forEach(recentMessages::evict);
+                messageIndex.removeRooms(roomIds);
+            }
+        });
+    }
+}
@@ -2,6 +2,7 @@ package ru.job4j.chat.service;
 
 import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
@@ -13,7 +14,7 @@ import ru.job4j.chat.repository.RoleRepository;
 import java.util.List;
 
 @Service
-public class UserDetailsServiceImpl implements UserDetailsService {
+public class UserDetailsServiceImpl implements UserDetailsService, UserDetailsPasswordService {
     private PersonRepository personRepository;
     private RoleRepository roleRepository;
 
@@ -31,4 +32,16 @@ public class UserDetailsServiceImpl implements UserDetailsService {
         Role role = roleRepository.findById(person.getRoleId()).get();
         return new User(person.getName(), person.getPassword(), List.of(role));
     }
+
+    /**
+     * Stores the password rehashed with the current bcrypt cost after a successful login.
+     */
+    @Override
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        personRepository.findByName(user.getUsername()).ifPresent(person -> {
+            person.setPassword(newPassword);
+            personRepository.save(person);
+        });
+        return User.withUserDetails(user).password(newPassword).build();
+    }
 }
@@ -0,0 +1,2 @@
+INSERT INTO role (name, updated) VALUES ('ROLE_USER', CURRENT_TIMESTAMP);
+INSERT INTO role (name, updated) VALUES ('ROLE_ADMIN', CURRENT_TIMESTAMP);
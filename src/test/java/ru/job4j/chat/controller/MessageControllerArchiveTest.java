@@ -0,0 +1,118 @@
+package ru.job4j.chat.controller;
+
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.util.FileSystemUtils;
+import ru.job4j.chat.ChatApplication;
+import ru.job4j.chat.domain.Message;
+import ru.job4j.chat.event.MessageEvent;
+import ru.job4j.chat.repository.MessageRepository;
+import ru.job4j.chat.service.MessageArchive;
+import ru.job4j.chat.service.MessageArchiver;
+import ru.job4j.chat.service.MessageIndex;
+import ru.job4j.chat.service.ReferenceValidator;
+
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(classes = ChatApplication.class,
+        properties = {"chat.archive.dir=" + MessageControllerArchiveTest.ARCHIVE_DIR, "chat.archive.after=30d",
+                "chat.archive.block-size=2"})
+@AutoConfigureMockMvc
+public class MessageControllerArchiveTest {
+    static final String ARCHIVE_DIR = "target/archive-test";
+    private static final int ROOM_ID = 888;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private MessageArchiver messageArchiver;
+
+    @Autowired
+    private MessageArchive messageArchive;
+
+    @Autowired
+    private MessageIndex messageIndex;
+
+    @MockBean
+    private ReferenceValidator referenceValidator;
+
+    @BeforeAll
+    public static void clearArchive() throws Exception {
+        FileSystemUtils.deleteRecursively(Paths.get(ARCHIVE_DIR));
+    }
+
+    @Test
+    public void whenHistoryGoesPastTheDatabaseThenItContinuesInTheArchive() throws Exception {
+        LocalDateTime now = LocalDateTime.now();
+        List<Message> messages = new ArrayList<>();
+        for (int i = 1; i <= 8; i++) {
+            Message message = new Message("message " + i);
+            message.setRoomId(ROOM_ID);
+            message.setAuthorId(1);
+            message.setCreated(i <= 5 ? now.minusDays(100).plusMinutes(i) : now.minusMinutes(10 - i));
+            messages.add(message);
+        }
+        messageRepository.saveAll(messages);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!messageIndex.isReady() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        messages.forEach(message -> messageIndex.onMessage(new MessageEvent(MessageEvent.Type.CREATED, message)));
+        long indexed = messageIndex.getDocuments();
+
+        messageArchiver.archive();
+        assertEquals(3, messageRepository.findByRoomId(ROOM_ID).size());
+        assertEquals(5, messageArchive.getMessages());
+        assertEquals(indexed - 5, messageIndex.getDocuments());
+
+        String page = "/message/roomId/" + ROOM_ID + "?limit=3";
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get(page).with(user("user")))
+                .andExpect(jsonPath("$.messages[*].text", contains("message 8", "message 7", "message 6")))
+                .andReturn();
+        String cursor = JsonPath.read(result.getResponse().getContentAsString(), "$.nextCursor");
+        result = mockMvc.perform(MockMvcRequestBuilders.get(page + "&before=" + cursor).with(user("user")))
+                .andExpect(jsonPath("$.messages[*].text", contains("message 5", "message 4", "message 3")))
+                .andReturn();
+        cursor = JsonPath.read(result.getResponse().getContentAsString(), "$.nextCursor");
+        mockMvc.perform(MockMvcRequestBuilders.get(page + "&before=" + cursor).with(user("user")))
+                .andExpect(jsonPath("$.messages[*].text", contains("message 2", "message 1")))
+                .andExpect(jsonPath("$.nextCursor", nullValue()));
+
+        result = mockMvc.perform(MockMvcRequestBuilders.get("/message/roomId/" + ROOM_ID + "/export")
+                .with(user("user")))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String[] lines = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString().split("\n");
+        assertEquals(8, lines.length);
+        for (int i = 0; i < lines.length; i++) {
+            assertEquals("message " + (i + 1), JsonPath.read(lines[i], "$.text"));
+        }
+        messageRepository.deleteAll(messageRepository.findByRoomId(ROOM_ID));
+    }
+}
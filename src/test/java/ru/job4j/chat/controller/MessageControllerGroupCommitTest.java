@@ -0,0 +1,92 @@
+package ru.job4j.chat.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import ru.job4j.chat.ChatApplication;
+import ru.job4j.chat.domain.Message;
+import ru.job4j.chat.repository.MessageRepository;
+import ru.job4j.chat.service.MessageWriter;
+import ru.job4j.chat.service.ReferenceValidator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(classes = ChatApplication.class,
+        properties = {"chat.group-commit.enabled=true", "chat.group-commit.linger=200ms",
+                "chat.purge.pause-ms=86400000"})
+@AutoConfigureMockMvc
+public class MessageControllerGroupCommitTest {
+    private static final int REQUESTS = 10;
+    private static final int ROOM_ID = 777;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private MessageWriter messageWriter;
+
+    @MockBean
+    private ReferenceValidator referenceValidator;
+
+    @Test
+    public void whenMessagesAreCreatedConcurrentlyThenTheyShareCommits() throws Exception {
+        long batchesBefore = messageWriter.getBatchCount();
+        ExecutorService clients = Executors.newFixedThreadPool(REQUESTS);
+        List<Future<Integer>> statuses = new ArrayList<>();
+        for (int i = 0; i < REQUESTS; i++) {
+            String body = "{\"text\":\"message " + i + "\",\"roomId\":" + ROOM_ID + ",\"authorId\":1}";
+            statuses.add(clients.submit(() -> mockMvc.perform(MockMvcRequestBuilders.post("/message/")
+                    .with(user("user"))
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(body))
+                    .andReturn().getResponse().getStatus()));
+        }
+        for (Future<Integer> status : statuses) {
+            assertEquals(201, status.get());
+        }
+        clients.shutdown();
+
+        assertEquals(REQUESTS, messageRepository.findByRoomId(ROOM_ID).size());
+        long batches = messageWriter.getBatchCount() - batchesBefore;
+        assertTrue(batches < REQUESTS, "messages were committed in " + batches + " batches");
+        messageRepository.deleteAll(messageRepository.findByRoomId(ROOM_ID));
+    }
+
+    @Test
+    public void whenMessageIsCreatedWithIdOfAnotherThenTheOtherIsKept() throws Exception {
+        Message existing = new Message("existing");
+        existing.setRoomId(ROOM_ID);
+        existing.setAuthorId(1);
+        int id = messageRepository.save(existing).getId();
+        String body = "{\"id\":" + id + ",\"text\":\"intruder\",\"roomId\":" + ROOM_ID + ",\"authorId\":1}";
+        mockMvc.perform(MockMvcRequestBuilders.post("/message/")
+                .with(user("user"))
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(body))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.id", not(id)));
+
+        assertEquals("existing", messageRepository.findById(id).orElseThrow().getText());
+        assertEquals(2, messageRepository.findByRoomId(ROOM_ID).size());
+        messageRepository.deleteAll(messageRepository.findByRoomId(ROOM_ID));
+    }
+}
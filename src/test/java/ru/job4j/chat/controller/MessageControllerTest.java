@@ -0,0 +1,226 @@
+package ru.job4j.chat.controller;
+
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.Test;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.MediaType;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import ru.job4j.chat.ChatApplication;
+import ru.job4j.chat.domain.Message;
+import ru.job4j.chat.event.MessageEvent;
+import ru.job4j.chat.event.MessageRetentionEvent;
+import ru.job4j.chat.repository.MessageRepository;
+import ru.job4j.chat.service.MessageIndex;
+import ru.job4j.chat.service.ReferenceValidator;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anySet;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(classes = ChatApplication.class)
+@AutoConfigureMockMvc
+public class MessageControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private MessageRepository messageRepository;
+
+    @MockBean
+    private ReferenceValidator referenceValidator;
+
+    @Autowired
+    private ObjectMapper mapper;
+
+    @Autowired
+    private MessageIndex messageIndex;
+
+    private Message message(int id, LocalDateTime created) {
+        Message message = new Message("message " + id);
+        message.setId(id);
+        message.setRoomId(1);
+        message.setCreated(created);
+        return message;
+    }
+
+    @Test
+    @WithMockUser
+    public void whenRoomHasMoreMessagesThanLimitThenReturnsPageWithCursor() throws Exception {
+        LocalDateTime now = LocalDateTime.of(2021, 10, 1, 12, 0);
+        Message third = message(3, now);
+        Message second = message(2, now.minusMinutes(1));
+        Message first = message(1, now.minusMinutes(2));
+        when(messageRepository.findByRoomIdOrderByCreatedDescIdDesc(1, PageRequest.of(0, 3)))
+                .thenReturn(List.of(third, second, first));
+        when(messageRepository.findByRoomIdBefore(1, second.getCreated(), 2, 3))
+                .thenReturn(List.of(first));
+
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders
+                .get("/message/roomId/1?limit=2")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.messages", hasSize(2)))
+                .andExpect(jsonPath("$.messages[0].id", is(3)))
+                .andExpect(jsonPath("$.messages[1].id", is(2)))
+                .andExpect(jsonPath("$.nextCursor", notNullValue()))
+                .andReturn();
+        String cursor = JsonPath.read(result.getResponse().getContentAsString(), "$.nextCursor");
+
+        mockMvc.perform(MockMvcRequestBuilders
+                .get("/message/roomId/1?limit=2&before=" + cursor)
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.messages", hasSize(1)))
+                .andExpect(jsonPath("$.messages[0].id", is(1)))
+                .andExpect(jsonPath("$.nextCursor", nullValue()));
+    }
+
+    @Test
+    @WithMockUser
+    public void whenCursorIsMalformedThenBadRequest() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders
+                .get("/message/roomId/1?before=garbage")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @WithMockUser
+    public void whenExportRoomThenStreamsOneMessagePerLine() throws Exception {
+        LocalDateTime now = LocalDateTime.of(2021, 10, 1, 12, 0);
+        when(messageRepository.streamAllByRoomId(1))
+                .thenReturn(Stream.of(message(1, now.minusMinutes(1)), message(2, now)));
+
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get("/message/roomId/1/export"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        assertEquals(Duration.ofHours(1).toMillis(), result.getRequest().getAsyncContext().getTimeout());
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"))
+                .andExpect(content().string(
+                        "{\"id\":1,\"text\":\"message 1\",\"created\":\"2021-10-01T11:59:00\",\"roomId\":1,\"authorId\":0}\n"
+                        + "{\"id\":2,\"text\":\"message 2\",\"created\":\"2021-10-01T12:00:00\",\"roomId\":1,\"authorId\":0}\n"));
+    }
+
+    @Test
+    @WithMockUser
+    public void whenPostBatchThenValidatesReferencesAsSetsAndSavesAll() throws Exception {
+        Message first = new Message("first");
+        first.setRoomId(1);
+        first.setAuthorId(7);
+        Message second = new Message("second");
+        second.setRoomId(2);
+        second.setAuthorId(7);
+        when(messageRepository.saveAllInBatches(anyList())).thenAnswer(invocation -> {
+            List<Message> messages = invocation.getArgument(0);
+            for (int i = 0; i < messages.size(); i++) {
+                messages.get(i).setId(i + 1);
+            }
+            return messages;
+        });
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/message/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(mapper.writeValueAsString(List.of(first, second))))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[1].id", is(2)))
+                .andExpect(jsonPath("$[1].text", is("second")));
+        verify(referenceValidator).checkPersonsExist(Set.of(7));
+        verify(referenceValidator).checkRoomsExist(Set.of(1, 2));
+    }
+
+    @Test
+    @WithMockUser
+    public void whenPostBatchWithEmptyTextThenBadRequest() throws Exception {
+        Message message = new Message("");
+        mockMvc.perform(MockMvcRequestBuilders.post("/message/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(mapper.writeValueAsString(List.of(message))))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @WithMockUser
+    public void whenSearchThenMessagesWithAllWordsRankedByFrequency() throws Exception {
+        Message once = new Message("Deploy the release today");
+        once.setId(101);
+        once.setRoomId(7);
+        Message twice = new Message("release notes: the release is ready");
+        twice.setId(102);
+        twice.setRoomId(7);
+        Message other = new Message("nothing to see here");
+        other.setId(103);
+        other.setRoomId(7);
+        for (Message message : List.of(once, twice, other)) {
+            messageIndex.onMessage(new MessageEvent(MessageEvent.Type.CREATED, message));
+        }
+        when(messageRepository.findAllById(anyList())).thenReturn(List.of(once, twice));
+        when(referenceValidator.existingRooms(anySet())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/message/search?q=RELEASE&roomId=7"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].id", is(102)))
+                .andExpect(jsonPath("$[1].id", is(101)));
+        mockMvc.perform(MockMvcRequestBuilders.get("/message/search?q=release+today&roomId=7"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].id", is(101)));
+        mockMvc.perform(MockMvcRequestBuilders.get("/message/search?q=!"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @WithMockUser
+    public void whenPartitionsAreDroppedByRetentionThenOldMessagesAreNotFound() throws Exception {
+        Message old = new Message("quarterly report draft");
+        old.setId(201);
+        old.setRoomId(8);
+        old.setCreated(LocalDateTime.now().minusYears(1));
+        Message recent = new Message("quarterly report final");
+        recent.setId(202);
+        recent.setRoomId(8);
+        for (Message message : List.of(old, recent)) {
+            messageIndex.onMessage(new MessageEvent(MessageEvent.Type.CREATED, message));
+        }
+        when(messageRepository.findAllById(anyList())).thenReturn(List.of(old, recent));
+        when(referenceValidator.existingRooms(anySet())).thenAnswer(invocation -> invocation.getArgument(0));
+        mockMvc.perform(MockMvcRequestBuilders.get("/message/search?q=quarterly&roomId=8"))
+                .andExpect(jsonPath("$", hasSize(2)));
+
+        messageIndex.onRetention(new MessageRetentionEvent(LocalDateTime.now().minusMonths(1)));
+        mockMvc.perform(MockMvcRequestBuilders.get("/message/search?q=quarterly&roomId=8"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].id", is(202)));
+    }
+}
@@ -0,0 +1,99 @@
+package ru.job4j.chat.controller;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import ru.job4j.chat.ChatApplication;
+import ru.job4j.chat.domain.Person;
+import ru.job4j.chat.domain.Role;
+import ru.job4j.chat.exception.PasswordHashingRejectedException;
+import ru.job4j.chat.repository.PersonRepository;
+import ru.job4j.chat.repository.RoleRepository;
+import ru.job4j.chat.security.BoundedPasswordEncoder;
+
+import static org.hamcrest.Matchers.startsWith;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(classes = ChatApplication.class, properties = "chat.purge.pause-ms=86400000")
+@AutoConfigureMockMvc
+public class PasswordHashingTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private PersonRepository personRepository;
+
+    @Autowired
+    private RoleRepository roleRepository;
+
+    @SpyBean
+    private BoundedPasswordEncoder encoder;
+
+    private int roleId;
+
+    @BeforeEach
+    public void fillDatabase() {
+        roleId = roleRepository.save(new Role("ROLE_USER")).getId();
+    }
+
+    @AfterEach
+    public void clearDatabase() {
+        personRepository.findByName("hashed").ifPresent(personRepository::delete);
+        roleRepository.deleteById(roleId);
+    }
+
+    @Test
+    public void whenHashingIsRejectedThenSignUpIsUnavailable() throws Exception {
+        doThrow(new PasswordHashingRejectedException("Too many password hashing requests, try again later"))
+                .when(encoder).encode(any());
+        mockMvc.perform(MockMvcRequestBuilders.post("/person/sign-up/")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"name\":\"hashed\",\"password\":\"password\"}"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"));
+    }
+
+    @Test
+    public void whenHashingIsRejectedThenLoginIsUnavailable() throws Exception {
+        personRepository.save(person(new BCryptPasswordEncoder(10).encode("password")));
+        doThrow(new PasswordHashingRejectedException("Too many password hashing requests, try again later"))
+                .when(encoder).matches(any(), any());
+        mockMvc.perform(MockMvcRequestBuilders.post("/login")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"name\":\"hashed\",\"password\":\"password\"}"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"));
+    }
+
+    @Test
+    public void whenPasswordWasHashedWithLowerCostThenItIsRehashedOnLogin() throws Exception {
+        personRepository.save(person(new BCryptPasswordEncoder(4).encode("password")));
+        mockMvc.perform(MockMvcRequestBuilders.post("/login")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"name\":\"hashed\",\"password\":\"password\"}"))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(HttpHeaders.AUTHORIZATION));
+        assertThat(personRepository.findByName("hashed").orElseThrow().getPassword(), startsWith("$2a$10$"));
+    }
+
+    private Person person(String password) {
+        Person person = new Person("hashed");
+        person.setPassword(password);
+        person.setRoleId(roleId);
+        return person;
+    }
+}
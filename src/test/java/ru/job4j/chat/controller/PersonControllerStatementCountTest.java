@@ -0,0 +1,127 @@
+package ru.job4j.chat.controller;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import ru.job4j.chat.ChatApplication;
+import ru.job4j.chat.domain.Message;
+import ru.job4j.chat.domain.Person;
+import ru.job4j.chat.domain.Room;
+import ru.job4j.chat.repository.MessageRepository;
+import ru.job4j.chat.repository.PersonRepository;
+import ru.job4j.chat.repository.RoomRepository;
+
+import javax.persistence.EntityManagerFactory;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(classes = ChatApplication.class,
+        properties = {"spring.jpa.properties.hibernate.generate_statistics=true",
+                "chat.purge.pause-ms=86400000"})
+@AutoConfigureMockMvc
+public class PersonControllerStatementCountTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private PersonRepository personRepository;
+
+    @Autowired
+    private RoomRepository roomRepository;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @BeforeEach
+    public void fillDatabase() {
+        for (int i = 0; i < 30; i++) {
+            Person person = new Person("person" + i);
+            person.setPassword("password");
+            person.setRoleId(1);
+            int authorId = personRepository.save(person).getId();
+            for (int j = 0; j < 3; j++) {
+                Room room = new Room("room" + i + "_" + j);
+                room.setAuthorId(authorId);
+                int roomId = roomRepository.save(room).getId();
+                for (int k = 0; k < 5; k++) {
+                    Message message = new Message("message" + k);
+                    message.setRoomId(roomId);
+                    message.setAuthorId(authorId);
+                    messageRepository.save(message);
+                }
+            }
+        }
+    }
+
+    @AfterEach
+    public void clearDatabase() {
+        messageRepository.deleteAll();
+        roomRepository.deleteAll();
+        personRepository.deleteAll();
+    }
+
+    @Test
+    @WithMockUser
+    public void whenFindAllThenPageWithRoomsCostsTwoStatements() throws Exception {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        mockMvc.perform(MockMvcRequestBuilders.get("/person/?page=1&size=10"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(10)))
+                .andExpect(jsonPath("$[0].name", is("person10")))
+                .andExpect(jsonPath("$[0].rooms", hasSize(3)));
+        assertEquals(2, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    @WithMockUser
+    public void whenFindAllWithFieldsThenOnlyRequestedFieldsAreRead() throws Exception {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        mockMvc.perform(MockMvcRequestBuilders.get("/person/?fields=name&page=1&size=10"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(10)))
+                .andExpect(jsonPath("$[0].name", is("person10")))
+                .andExpect(jsonPath("$[0].*", hasSize(1)));
+        assertEquals(1, statistics.getPrepareStatementCount());
+        statistics.clear();
+        mockMvc.perform(MockMvcRequestBuilders.get("/person/?fields=name,rooms&page=1&size=10"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].*", hasSize(2)))
+                .andExpect(jsonPath("$[0].rooms", hasSize(3)));
+        assertEquals(2, statistics.getPrepareStatementCount());
+        mockMvc.perform(MockMvcRequestBuilders.get("/person/?fields=name,password"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @WithMockUser
+    public void whenDeletePersonThenRoomsAndMessagesAreDeletedByBulkStatements() throws Exception {
+        int id = personRepository.findByName("person0").orElseThrow().getId();
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        mockMvc.perform(MockMvcRequestBuilders.delete("/person/" + id))
+                .andExpect(status().isOk());
+        assertEquals(7, statistics.getPrepareStatementCount());
+        assertTrue(roomRepository.findByAuthorId(id).isEmpty());
+        assertEquals(29 * 3 * 5, messageRepository.count());
+        assertEquals(29, personRepository.count());
+    }
+}
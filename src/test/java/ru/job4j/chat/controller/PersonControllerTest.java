@@ -5,27 +5,25 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
-import org.springframework.core.ParameterizedTypeReference;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.HttpStatus;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
-import org.springframework.web.client.RestTemplate;
 import ru.job4j.chat.ChatApplication;
 import ru.job4j.chat.domain.Person;
 import ru.job4j.chat.domain.Room;
+import ru.job4j.chat.dto.VersionDTO;
 import ru.job4j.chat.repository.PersonRepository;
+import ru.job4j.chat.repository.RoomRepository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
-import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
@@ -41,7 +39,7 @@ public class PersonControllerTest {
     private PersonRepository personRepository;
 
     @MockBean
-    private RestTemplate restTemplate;
+    private RoomRepository roomRepository;
 
     @Test
     @WithMockUser
@@ -52,14 +50,10 @@ public class PersonControllerTest {
         Person oleg = new Person("Oleg");
         oleg.setId(2);
         oleg.setRoleId(5);
-        when(personRepository.findAll()).thenReturn(List.of(sergey, oleg));
-        when(restTemplate.exchange(
-                any(String.class),
-                eq(HttpMethod.GET),
-                eq(null),
-                eq(new ParameterizedTypeReference<List<Room>>() {}))
-        )
-                .thenReturn(new ResponseEntity<>(List.of(new Room("First room")), HttpStatus.OK));
+        Room firstRoom = new Room("First room");
+        firstRoom.setAuthorId(2);
+        when(personRepository.findAllBy(PageRequest.of(0, 20, Sort.by("id")))).thenReturn(List.of(sergey, oleg));
+        when(roomRepository.findByAuthorIdIn(List.of(1, 2))).thenReturn(List.of(firstRoom));
         mockMvc.perform(MockMvcRequestBuilders
                 .get("/person/")
                 .contentType(MediaType.APPLICATION_JSON))
@@ -67,6 +61,7 @@ public class PersonControllerTest {
                 .andExpect(jsonPath("$", hasSize(2)))
                 .andExpect(jsonPath("$[0].name", is("Sergey")))
                 .andExpect(jsonPath("$[1].name", is("Oleg")))
+                .andExpect(jsonPath("$[0].rooms", hasSize(0)))
                 .andExpect(jsonPath("$[1].roleId", is(5)))
                 .andExpect(jsonPath("$[1].rooms[0].name", is("First room")));
     }
@@ -78,13 +73,9 @@ public class PersonControllerTest {
         oleg.setId(1);
         oleg.setRoleId(5);
         when(personRepository.findById(1)).thenReturn(Optional.of(oleg));
-        when(restTemplate.exchange(
-                any(String.class),
-                eq(HttpMethod.GET),
-                eq(null),
-                eq(new ParameterizedTypeReference<List<Room>>() {}))
-        )
-                .thenReturn(new ResponseEntity<>(List.of(new Room("First room")), HttpStatus.OK));
+        when(roomRepository.findByAuthorId(1)).thenReturn(List.of(new Room("First room")));
+        when(personRepository.findVersionById(1)).thenReturn(new VersionDTO(LocalDateTime.now(), 1, 1));
+        when(roomRepository.findVersionByAuthorId(1)).thenReturn(new VersionDTO(LocalDateTime.now(), 1, 1));
         mockMvc.perform(MockMvcRequestBuilders
                 .get("/person/1")
                 .contentType(MediaType.APPLICATION_JSON))
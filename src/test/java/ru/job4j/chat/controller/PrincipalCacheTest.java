@@ -0,0 +1,116 @@
+package ru.job4j.chat.controller;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import ru.job4j.chat.ChatApplication;
+import ru.job4j.chat.domain.Person;
+import ru.job4j.chat.domain.Role;
+import ru.job4j.chat.repository.PersonRepository;
+import ru.job4j.chat.repository.RoleRepository;
+import ru.job4j.chat.security.PrincipalCache;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static ru.job4j.chat.security.JWTAuthenticationFilter.HEADER_STRING;
+import static ru.job4j.chat.security.JWTAuthenticationFilter.SECRET;
+import static ru.job4j.chat.security.JWTAuthenticationFilter.TOKEN_PREFIX;
+
+@SpringBootTest(classes = ChatApplication.class, properties = "chat.purge.pause-ms=86400000")
+@AutoConfigureMockMvc
+public class PrincipalCacheTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private PersonRepository personRepository;
+
+    @Autowired
+    private RoleRepository roleRepository;
+
+    @Autowired
+    private PrincipalCache principalCache;
+
+    private Role user;
+
+    private Role moderator;
+
+    private Person person;
+
+    @BeforeEach
+    public void fillDatabase() {
+        principalCache.evictAll();
+        user = roleRepository.save(new Role("ROLE_USER"));
+        moderator = roleRepository.save(new Role("ROLE_MODERATOR"));
+        person = new Person("cached");
+        person.setPassword("password");
+        person.setRoleId(user.getId());
+        person = personRepository.save(person);
+    }
+
+    @AfterEach
+    public void clearDatabase() {
+        personRepository.findById(person.getId()).ifPresent(personRepository::delete);
+        roleRepository.delete(user);
+        roleRepository.delete(moderator);
+        principalCache.evictAll();
+    }
+
+    @Test
+    public void whenSameTokenIsUsedTwiceThenRoleIsLoadedOnce() throws Exception {
+        long hits = principalCache.getHitCount();
+        long misses = principalCache.getMissCount();
+        mockMvc.perform(authorized(MockMvcRequestBuilders.get("/role/")))
+                .andExpect(status().isOk());
+        mockMvc.perform(authorized(MockMvcRequestBuilders.get("/role/")))
+                .andExpect(status().isOk());
+        assertThat(principalCache.getMissCount() - misses, is(1L));
+        assertThat(principalCache.getHitCount() - hits, is(1L));
+    }
+
+    @Test
+    public void whenRoleIsChangedThenCachedRoleIsEvicted() throws Exception {
+        assertThat(principalCache.findRole("cached").getName(), is("ROLE_USER"));
+        mockMvc.perform(authorized(MockMvcRequestBuilders.put("/person/" + person.getId() + "/roleId/"))
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(String.valueOf(moderator.getId())))
+                .andExpect(status().isOk());
+        assertThat(principalCache.findRole("cached").getName(), is("ROLE_MODERATOR"));
+    }
+
+    @Test
+    public void whenNameIsPatchedThenOldNameIsEvicted() throws Exception {
+        assertThat(principalCache.findRole("cached").getName(), is("ROLE_USER"));
+        mockMvc.perform(authorized(MockMvcRequestBuilders.patch("/person/" + person.getId()))
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"name\":\"renamed\"}"))
+                .andExpect(status().isOk());
+        assertThat(principalCache.findRole("cached"), is(nullValue()));
+        assertThat(principalCache.findRole("renamed").getName(), is("ROLE_USER"));
+    }
+
+    @Test
+    public void whenPersonIsDeletedThenCachedRoleIsEvicted() throws Exception {
+        assertThat(principalCache.findRole("cached").getName(), is("ROLE_USER"));
+        mockMvc.perform(authorized(MockMvcRequestBuilders.delete("/person/" + person.getId())))
+                .andExpect(status().isOk());
+        assertThat(principalCache.findRole("cached"), is(nullValue()));
+    }
+
+    private static MockHttpServletRequestBuilder authorized(MockHttpServletRequestBuilder request) {
+        String token = JWT.create().withSubject("cached").sign(Algorithm.HMAC512(SECRET.getBytes()));
+        return request.header(HEADER_STRING, TOKEN_PREFIX + token);
+    }
+}
@@ -0,0 +1,56 @@
+package ru.job4j.chat.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import ru.job4j.chat.ChatApplication;
+
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(classes = ChatApplication.class,
+        properties = {"management.endpoints.web.exposure.include=health,prometheus",
+                "management.metrics.distribution.percentiles-histogram.http.server.requests=true",
+                "spring.jpa.properties.hibernate.generate_statistics=true",
+                "chat.purge.pause-ms=86400000"})
+@AutoConfigureMockMvc
+@AutoConfigureMetrics
+public class PrometheusEndpointTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    @WithMockUser
+    public void whenEndpointIsCalledThenItsLatencyIsScrapedPerControllerMethod() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/role/name/ROLE_MISSING"));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(allOf(
+                        containsString("http_server_requests_seconds_bucket{"),
+                        containsString("handler=\"RoleController.getRoleByName\""),
+                        containsString("hikaricp_connections_active"),
+                        containsString("hibernate_statements_total"),
+                        containsString("chat_bcrypt_hash_seconds_count"),
+                        containsString("chat_bcrypt_queue_depth"),
+                        containsString("cache_gets_total{cache=\"principal\""),
+                        containsString("cache_gets_total{cache=\"room\"")
+                )));
+    }
+
+    @Test
+    public void whenScrapedWithoutTokenThenOnlyHealthIsOpen() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/actuator/health"))
+                .andExpect(status().isOk());
+        mockMvc.perform(MockMvcRequestBuilders.get("/actuator/prometheus"))
+                .andExpect(status().isForbidden());
+    }
+}
@@ -0,0 +1,36 @@
+package ru.job4j.chat.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import ru.job4j.chat.ChatApplication;
+
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(classes = ChatApplication.class,
+        properties = {"chat.purge.pause-ms=86400000",
+                "chat.rate-limit.read.capacity=20", "chat.rate-limit.read.per-second=0.1"})
+@AutoConfigureMockMvc
+public class RateLimitTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    @WithMockUser(username = "greedy")
+    public void whenReadsExceedBucketThenTooManyRequestsWithRetryAfter() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            mockMvc.perform(MockMvcRequestBuilders.get("/room/purge/0"))
+                    .andExpect(status().isNotFound());
+        }
+        mockMvc.perform(MockMvcRequestBuilders.get("/room/purge/0"))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "10"));
+    }
+}
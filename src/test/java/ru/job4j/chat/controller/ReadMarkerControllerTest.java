@@ -0,0 +1,182 @@
+package ru.job4j.chat.controller;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.MediaType;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import ru.job4j.chat.ChatApplication;
+import ru.job4j.chat.domain.Message;
+import ru.job4j.chat.domain.Person;
+import ru.job4j.chat.domain.Room;
+import ru.job4j.chat.event.MessageRetentionEvent;
+import ru.job4j.chat.repository.MessageRepository;
+import ru.job4j.chat.repository.PersonRepository;
+import ru.job4j.chat.repository.ReadMarkerRepository;
+import ru.job4j.chat.repository.RoomRepository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(classes = ChatApplication.class)
+@AutoConfigureMockMvc
+public class ReadMarkerControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private PersonRepository personRepository;
+
+    @Autowired
+    private RoomRepository roomRepository;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private ReadMarkerRepository readMarkerRepository;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    private int userId;
+    private int otherId;
+    private int roomId;
+    private int firstMessageId;
+
+    @BeforeEach
+    public void fillDatabase() {
+        userId = personRepository.save(person("user")).getId();
+        otherId = personRepository.save(person("other")).getId();
+        Room room = new Room("markers");
+        room.setAuthorId(otherId);
+        roomId = roomRepository.save(room).getId();
+        firstMessageId = messageRepository.save(message(otherId)).getId();
+        messageRepository.save(message(otherId));
+        messageRepository.save(message(userId));
+    }
+
+    @AfterEach
+    public void clearDatabase() {
+        readMarkerRepository.deleteAll();
+        messageRepository.deleteAll();
+        roomRepository.deleteAll();
+        personRepository.deleteAll();
+    }
+
+    @Test
+    @WithMockUser(username = "user")
+    public void whenMessagesAreCreatedAndDeletedThenUnreadCountFollows() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.put("/room/" + roomId + "/read")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(String.valueOf(firstMessageId)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.unreadCount", is(1)));
+
+        createMessage(otherId);
+        createMessage(userId);
+        String created = createMessage(otherId);
+        expectUnread(3);
+
+        mockMvc.perform(MockMvcRequestBuilders.delete("/message/" + created))
+                .andExpect(status().isOk());
+        expectUnread(2);
+    }
+
+    @Test
+    @WithMockUser(username = "user")
+    public void whenEarlierMessageHasGreaterIdThenItIsNotUnread() throws Exception {
+        Message earlier = message(otherId);
+        earlier.setCreated(LocalDateTime.now().minusDays(1));
+        int earlierId = messageRepository.save(earlier).getId();
+        mockMvc.perform(MockMvcRequestBuilders.put("/room/" + roomId + "/read")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(String.valueOf(firstMessageId)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.unreadCount", is(1)));
+
+        mockMvc.perform(MockMvcRequestBuilders.delete("/message/" + earlierId))
+                .andExpect(status().isOk());
+        expectUnread(1);
+    }
+
+    @Test
+    @WithMockUser(username = "user")
+    public void whenOldMessagesAreRemovedByRetentionThenUnreadCountIsRecounted() throws Exception {
+        LocalDateTime now = LocalDateTime.now();
+        Message oldest = message(otherId);
+        oldest.setCreated(now.minusDays(3));
+        int oldestId = messageRepository.save(oldest).getId();
+        Message old = message(otherId);
+        old.setCreated(now.minusDays(2));
+        int oldId = messageRepository.save(old).getId();
+        mockMvc.perform(MockMvcRequestBuilders.put("/room/" + roomId + "/read")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(String.valueOf(oldestId)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.unreadCount", is(3)));
+
+        messageRepository.deleteAllById(List.of(oldestId, oldId));
+        eventPublisher.publishEvent(new MessageRetentionEvent(now.minusDays(1)));
+        expectUnread(2);
+    }
+
+    @Test
+    @WithMockUser(username = "user")
+    public void whenUnreadCountsOfAnotherPersonThenForbidden() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/person/" + otherId + "/unread"))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    @WithMockUser(username = "user")
+    public void whenMessageIsFromAnotherRoomThenNotFound() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.put("/room/" + roomId + "/read")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(String.valueOf(Integer.MAX_VALUE)))
+                .andExpect(status().isNotFound());
+    }
+
+    private String createMessage(int authorId) throws Exception {
+        String body = mockMvc.perform(MockMvcRequestBuilders.post("/message/")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"text\":\"new\",\"roomId\":" + roomId + ",\"authorId\":" + authorId + "}"))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        return body.substring(body.indexOf(':') + 1, body.indexOf(','));
+    }
+
+    private void expectUnread(int count) throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/person/" + userId + "/unread"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].roomId", is(roomId)))
+                .andExpect(jsonPath("$[0].unreadCount", is(count)));
+    }
+
+    private Person person(String name) {
+        Person person = new Person(name);
+        person.setPassword("password");
+        person.setRoleId(1);
+        return person;
+    }
+
+    private Message message(int authorId) {
+        Message message = new Message("message");
+        message.setRoomId(roomId);
+        message.setAuthorId(authorId);
+        return message;
+    }
+}
@@ -0,0 +1,73 @@
+package ru.job4j.chat.controller;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import ru.job4j.chat.ChatApplication;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Two embedded databases: the primary gets its schema from Hibernate,
+ * the replica is prepared by hand with a role that the primary does not have.
+ */
+@SpringBootTest(classes = ChatApplication.class,
+        properties = {"chat.datasource.routing=true",
+                "spring.datasource.url=jdbc:h2:mem:routing-primary;DB_CLOSE_DELAY=-1",
+                "chat.datasource.replica-urls=" + ReplicaRoutingTest.REPLICA_URL,
+                "chat.purge.pause-ms=86400000"})
+@AutoConfigureMockMvc
+public class ReplicaRoutingTest {
+    static final String REPLICA_URL = "jdbc:h2:mem:routing-replica;DB_CLOSE_DELAY=-1";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @BeforeAll
+    public static void fillReplica() throws Exception {
+        try (Connection connection = DriverManager.getConnection(REPLICA_URL, "test", "");
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE role (id integer PRIMARY KEY, name varchar(255) NOT NULL, updated timestamp NOT NULL)");
+            statement.execute("INSERT INTO role (id, name, updated) VALUES (1, 'ROLE_REPLICA', now())");
+        }
+    }
+
+    @Test
+    @WithMockUser
+    public void whenGetThenReadFromReplicaAndWhenPostThenWrittenToPrimary() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.post("/role/")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"name\":\"ROLE_PRIMARY\"}"))
+                .andExpect(status().isCreated());
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/role/"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].name", is("ROLE_REPLICA")));
+        mockMvc.perform(MockMvcRequestBuilders.get("/role/name/ROLE_PRIMARY"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @WithMockUser
+    public void whenWriteThenItsChecksReadFromPrimary() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.post("/role/")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"name\":\"ROLE_REPLICA\"}"))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.name", is("ROLE_REPLICA")));
+    }
+}
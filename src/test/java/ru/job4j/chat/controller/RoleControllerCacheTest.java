@@ -0,0 +1,87 @@
+package ru.job4j.chat.controller;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import ru.job4j.chat.ChatApplication;
+import ru.job4j.chat.domain.Role;
+import ru.job4j.chat.repository.RoleRepository;
+
+import javax.persistence.EntityManagerFactory;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(classes = ChatApplication.class,
+        properties = {"chat.cache.enabled=true", "chat.purge.pause-ms=86400000"})
+@AutoConfigureMockMvc
+public class RoleControllerCacheTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private RoleRepository roleRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @AfterEach
+    public void clearDatabase() {
+        for (String name : new String[] {"ROLE_CACHED", "ROLE_NEW"}) {
+            roleRepository.findByName(name).ifPresent(roleRepository::delete);
+        }
+    }
+
+    @Test
+    @WithMockUser
+    public void whenRoleIsReadAgainThenItComesFromCache() throws Exception {
+        int id = roleRepository.save(new Role("ROLE_CACHED")).getId();
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        mockMvc.perform(MockMvcRequestBuilders.get("/role/name/ROLE_CACHED"))
+                .andExpect(status().isOk());
+        mockMvc.perform(MockMvcRequestBuilders.get("/role/" + id))
+                .andExpect(status().isOk());
+        statistics.clear();
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/role/name/ROLE_CACHED"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id", is(id)));
+        mockMvc.perform(MockMvcRequestBuilders.get("/role/" + id))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name", is("ROLE_CACHED")));
+        assertEquals(0, statistics.getPrepareStatementCount());
+        assertEquals(2, statistics.getQueryCacheHitCount());
+        assertEquals(2, statistics.getSecondLevelCacheHitCount());
+    }
+
+    @Test
+    @WithMockUser
+    public void whenRoleIsUpdatedThenCachedQueryIsNotUsed() throws Exception {
+        int id = roleRepository.save(new Role("ROLE_OLD")).getId();
+        mockMvc.perform(MockMvcRequestBuilders.get("/role/name/ROLE_OLD"))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(MockMvcRequestBuilders.put("/role/")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"id\":" + id + ",\"name\":\"ROLE_NEW\"}"))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/role/name/ROLE_NEW"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id", is(id)));
+        mockMvc.perform(MockMvcRequestBuilders.get("/role/" + id))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name", is("ROLE_NEW")));
+    }
+}
@@ -6,6 +6,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MockMvc;
@@ -13,15 +14,22 @@ import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilde
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import ru.job4j.chat.ChatApplication;
 import ru.job4j.chat.domain.Role;
+import ru.job4j.chat.dto.VersionDTO;
 import ru.job4j.chat.repository.RoleRepository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.clearInvocations;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -46,6 +54,7 @@ public class RoleControllerTest {
         Role admin = new Role("admin");
         admin.setId(2);
         when(roleRepository.findAll()).thenReturn(List.of(user, admin));
+        when(roleRepository.findVersion()).thenReturn(new VersionDTO(LocalDateTime.now(), 2, 3));
         mockMvc.perform(MockMvcRequestBuilders
                 .get("/role/")
                 .contentType(MediaType.APPLICATION_JSON))
@@ -55,12 +64,34 @@ public class RoleControllerTest {
                 .andExpect(jsonPath("$[1].name", is("admin")));
     }
 
+    @Test
+    @WithMockUser
+    public void whenFindAllWithCurrentEtagThenNotModifiedWithoutLoadingRoles() throws Exception {
+        VersionDTO version = new VersionDTO(LocalDateTime.of(2021, 10, 1, 12, 0), 2, 3);
+        when(roleRepository.findVersion()).thenReturn(version);
+        String etag = mockMvc.perform(MockMvcRequestBuilders.get("/role/"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertEquals("\"" + version.toEtag() + "\"", etag);
+        clearInvocations(roleRepository);
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/role/").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+        verify(roleRepository, never()).findAll();
+
+        when(roleRepository.findVersion()).thenReturn(new VersionDTO(version.getUpdated(), 1, 1));
+        mockMvc.perform(MockMvcRequestBuilders.get("/role/").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk());
+    }
+
     @Test
     @WithMockUser
     public void whenFindByIdWithExistingIDThenReturnsRoleWithThisId() throws Exception {
         Role user = new Role("user");
         user.setId(1);
         when(roleRepository.findById(1)).thenReturn(Optional.of(user));
+        when(roleRepository.findVersionById(1)).thenReturn(new VersionDTO(LocalDateTime.now(), 1, 1));
         mockMvc.perform(MockMvcRequestBuilders
                 .get("/role/1")
                 .contentType(MediaType.APPLICATION_JSON))
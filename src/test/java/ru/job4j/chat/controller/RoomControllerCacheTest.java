@@ -0,0 +1,61 @@
+package ru.job4j.chat.controller;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import ru.job4j.chat.ChatApplication;
+import ru.job4j.chat.domain.Room;
+import ru.job4j.chat.repository.RoomRepository;
+
+import javax.persistence.EntityManagerFactory;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(classes = ChatApplication.class,
+        properties = {"chat.cache.enabled=true", "chat.purge.pause-ms=86400000"})
+@AutoConfigureMockMvc
+public class RoomControllerCacheTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private RoomRepository roomRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @AfterEach
+    public void clearDatabase() {
+        roomRepository.findByName("cached").ifPresent(roomRepository::delete);
+    }
+
+    @Test
+    @WithMockUser
+    public void whenRoomIsViewedAgainThenItComesFromCache() throws Exception {
+        Room room = new Room("cached");
+        room.setAuthorId(1);
+        int id = roomRepository.save(room).getId();
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        mockMvc.perform(MockMvcRequestBuilders.get("/room/" + id))
+                .andExpect(status().isOk());
+        statistics.clear();
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/room/" + id))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name", is("cached")));
+        assertEquals(0, statistics.getPrepareStatementCount());
+        assertEquals(2, statistics.getQueryCacheHitCount());
+        assertEquals(1, statistics.getSecondLevelCacheHitCount());
+    }
+}
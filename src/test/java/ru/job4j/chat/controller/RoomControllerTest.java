@@ -0,0 +1,331 @@
+package ru.job4j.chat.controller;
+
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.web.server.ResponseStatusException;
+import ru.job4j.chat.ChatApplication;
+import ru.job4j.chat.domain.Message;
+import ru.job4j.chat.domain.Room;
+import ru.job4j.chat.event.MessageEvent;
+import ru.job4j.chat.filter.IdempotencyFilter;
+import ru.job4j.chat.repository.MessageRepository;
+import ru.job4j.chat.repository.RoomRepository;
+import ru.job4j.chat.service.MessageHub;
+import ru.job4j.chat.service.ReferenceValidator;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(classes = ChatApplication.class,
+        properties = {"chat.purge.batch-size=10", "chat.purge.pause-ms=10"})
+@AutoConfigureMockMvc
+public class RoomControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private MessageHub messageHub;
+
+    @Autowired
+    private RoomRepository roomRepository;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @MockBean
+    private ReferenceValidator referenceValidator;
+
+    @Test
+    @WithMockUser
+    public void whenMessageIsCreatedInRoomThenSubscriberReceivesEvent() throws Exception {
+        MockHttpServletResponse response = mockMvc.perform(MockMvcRequestBuilders.get("/room/1/subscribe"))
+                .andExpect(request().asyncStarted())
+                .andReturn()
+                .getResponse();
+        Message other = new Message("other room");
+        other.setId(1);
+        other.setRoomId(2);
+        Message message = new Message("hello");
+        message.setId(2);
+        message.setRoomId(1);
+
+        messageHub.onMessage(new MessageEvent(MessageEvent.Type.CREATED, other));
+        messageHub.onMessage(new MessageEvent(MessageEvent.Type.CREATED, message));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!response.getContentAsString().contains("hello") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        String events = response.getContentAsString();
+        assertThat(events, containsString("event:created\nid:2\ndata:{\"id\":2,\"text\":\"hello\""));
+        assertThat(events, not(containsString("other room")));
+    }
+
+    @Test
+    @WithMockUser
+    public void whenDeleteRoomThenRoomIsHiddenAndPurgedInBackground() throws Exception {
+        Room room = new Room("purged room");
+        room.setAuthorId(1);
+        int roomId = roomRepository.save(room).getId();
+        int messageId = 0;
+        for (int i = 0; i < 25; i++) {
+            Message message = new Message("message " + i);
+            message.setRoomId(roomId);
+            message.setAuthorId(1);
+            messageId = messageRepository.save(message).getId();
+        }
+
+        String purge = mockMvc.perform(MockMvcRequestBuilders.delete("/room/" + roomId))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.roomId", is(roomId)))
+                .andReturn().getResponse().getContentAsString();
+        String location = "/room/purge/" + JsonPath.read(purge, "$.id");
+        mockMvc.perform(MockMvcRequestBuilders.get("/room/" + roomId))
+                .andExpect(status().isNotFound());
+        doThrow(new ResponseStatusException(HttpStatus.NOT_FOUND)).when(referenceValidator).checkRoomExists(roomId);
+        mockMvc.perform(MockMvcRequestBuilders.get("/message/roomId/" + roomId))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(MockMvcRequestBuilders.get("/message/" + messageId))
+                .andExpect(status().isNotFound());
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (roomRepository.findByName("purged room").isPresent() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        mockMvc.perform(MockMvcRequestBuilders.get(location))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status", is("DONE")))
+                .andExpect(jsonPath("$.purged", is(25)));
+        assertTrue(messageRepository.findByRoomId(roomId).isEmpty());
+    }
+
+    @Test
+    @WithMockUser
+    public void whenFindRoomWithFieldsThenOnlyRequestedFieldsAreReturned() throws Exception {
+        Room room = new Room("sparse room");
+        room.setAuthorId(1);
+        int roomId = roomRepository.save(room).getId();
+        Message message = new Message("only message");
+        message.setRoomId(roomId);
+        message.setAuthorId(1);
+        messageRepository.save(message);
+        mockMvc.perform(MockMvcRequestBuilders.get("/room/" + roomId + "?fields=name"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.*", hasSize(1)))
+                .andExpect(jsonPath("$.name", is("sparse room")));
+        mockMvc.perform(MockMvcRequestBuilders.get("/room/" + roomId + "?fields=messages"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.*", hasSize(1)))
+                .andExpect(jsonPath("$.messages[0].text", is("only message")));
+    }
+
+    @Test
+    @WithMockUser
+    public void whenClearRoomThenMessagesWrittenAfterTheClearAreKept() throws Exception {
+        Room room = new Room("cleared room");
+        room.setAuthorId(1);
+        int roomId = roomRepository.save(room).getId();
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < 15; i++) {
+            Message message = new Message("before " + i);
+            message.setRoomId(roomId);
+            message.setAuthorId(1);
+            written(messageRepository.save(message), now.minusMinutes(1));
+        }
+        Message after = new Message("after");
+        after.setRoomId(roomId);
+        after.setAuthorId(1);
+        written(messageRepository.save(after), now.plusHours(1));
+        mockMvc.perform(MockMvcRequestBuilders.delete("/message/roomId/" + roomId))
+                .andExpect(status().isAccepted());
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (messageRepository.findByRoomId(roomId).size() > 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        List<Message> left = messageRepository.findByRoomId(roomId);
+        assertEquals(1, left.size());
+        assertEquals("after", left.get(0).getText());
+    }
+
+    @Test
+    @WithMockUser
+    public void whenFindRoomWithRecentThenNewestMessagesIncludingJustCreated() throws Exception {
+        Room room = new Room("recent room");
+        room.setAuthorId(1);
+        int roomId = roomRepository.save(room).getId();
+        for (int i = 0; i < 3; i++) {
+            Message message = new Message("message " + i);
+            message.setRoomId(roomId);
+            message.setAuthorId(1);
+            messageRepository.save(message);
+        }
+        mockMvc.perform(MockMvcRequestBuilders.get("/room/" + roomId + "?recent=2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.messages", hasSize(2)))
+                .andExpect(jsonPath("$.messages[0].text", is("message 2")));
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/message/")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"text\":\"newest\",\"roomId\":" + roomId + ",\"authorId\":1}"))
+                .andExpect(status().isCreated());
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/room/" + roomId + "?recent=2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.messages", hasSize(2)))
+                .andExpect(jsonPath("$.messages[0].text", is("newest")))
+                .andExpect(jsonPath("$.messages[1].text", is("message 2")));
+        mockMvc.perform(MockMvcRequestBuilders.get("/room/" + roomId + "?recent=0"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @WithMockUser
+    public void whenRoomIsUnchangedThenNotModifiedUntilMessageIsPosted() throws Exception {
+        Room room = new Room("etag room");
+        room.setAuthorId(1);
+        int roomId = roomRepository.save(room).getId();
+        String etag = mockMvc.perform(MockMvcRequestBuilders.get("/room/" + roomId))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/room/" + roomId).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/message/")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"text\":\"changes etag\",\"roomId\":" + roomId + ",\"authorId\":1}"))
+                .andExpect(status().isCreated());
+        mockMvc.perform(MockMvcRequestBuilders.get("/room/" + roomId).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, not(etag)))
+                .andExpect(jsonPath("$.messages[0].text", is("changes etag")));
+    }
+
+    @Test
+    @WithMockUser
+    public void whenCreateRoomIsRetriedWithSameKeyThenFirstResponseIsReplayed() throws Exception {
+        String first = mockMvc.perform(MockMvcRequestBuilders.post("/room/")
+                .header(IdempotencyFilter.HEADER, "room-key")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"name\":\"idempotent room\",\"authorId\":1}"))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/room/")
+                .header(IdempotencyFilter.HEADER, "room-key")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"name\":\"idempotent room\",\"authorId\":1}"))
+                .andExpect(status().isCreated())
+                .andExpect(header().string(IdempotencyFilter.REPLAYED_HEADER, "true"))
+                .andExpect(content().json(first));
+        mockMvc.perform(MockMvcRequestBuilders.post("/room/")
+                .header(IdempotencyFilter.HEADER, "room-key")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"name\":\"another room\",\"authorId\":1}"))
+                .andExpect(status().isUnprocessableEntity());
+        assertTrue(roomRepository.findByName("another room").isEmpty());
+    }
+
+    @Test
+    public void whenRetriedWhileFirstRequestRunsThenRetryWaitsForItsResponse() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch proceed = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            entered.countDown();
+            proceed.await(5, TimeUnit.SECONDS);
+            return null;
+        }).when(referenceValidator).checkPersonExists(2);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<MockHttpServletResponse> first = executor.submit(() -> createRoom("waiting-key", "waited room", 2));
+            assertTrue(entered.await(5, TimeUnit.SECONDS));
+            Future<MockHttpServletResponse> retry = executor.submit(() -> createRoom("waiting-key", "waited room", 2));
+            assertThrows(TimeoutException.class, () -> retry.get(200, TimeUnit.MILLISECONDS));
+            proceed.countDown();
+            assertEquals(HttpStatus.CREATED.value(), first.get(5, TimeUnit.SECONDS).getStatus());
+            MockHttpServletResponse replayed = retry.get(5, TimeUnit.SECONDS);
+            assertEquals(HttpStatus.CREATED.value(), replayed.getStatus());
+            assertEquals("true", replayed.getHeader(IdempotencyFilter.REPLAYED_HEADER));
+            assertEquals(first.get().getContentAsString(), replayed.getContentAsString());
+        } finally {
+            proceed.countDown();
+            executor.shutdownNow();
+        }
+        verify(referenceValidator, times(1)).checkPersonExists(2);
+    }
+
+    @Test
+    public void whenFirstRequestFailsThenRetryWithSameKeyRunsAgain() throws Exception {
+        doThrow(new ResponseStatusException(HttpStatus.NOT_FOUND, "Person with id = 3 not found"))
+                .doNothing()
+                .when(referenceValidator).checkPersonExists(3);
+        assertEquals(HttpStatus.NOT_FOUND.value(), createRoom("failed-key", "retried room", 3).getStatus());
+        MockHttpServletResponse retry = createRoom("failed-key", "retried room", 3);
+        assertEquals(HttpStatus.CREATED.value(), retry.getStatus());
+        assertNull(retry.getHeader(IdempotencyFilter.REPLAYED_HEADER));
+        assertTrue(roomRepository.findByName("retried room").isPresent());
+    }
+
+    /**
+     * Runs from other threads too, so the user is set on the request rather than by WithMockUser.
+     */
+    private MockHttpServletResponse createRoom(String key, String name, int authorId) throws Exception {
+        return mockMvc.perform(MockMvcRequestBuilders.post("/room/")
+                .with(user("user"))
+                .header(IdempotencyFilter.HEADER, key)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"name\":\"" + name + "\",\"authorId\":" + authorId + "}"))
+                .andReturn().getResponse();
+    }
+
+    /**
+     * Sets the time the message was last written, the entity stamps it on save.
+     */
+    private void written(Message message, LocalDateTime updated) {
+        jdbcTemplate.update("UPDATE message SET updated = ? WHERE id = ?", updated, message.getId());
+    }
+}
@@ -0,0 +1,62 @@
+package ru.job4j.chat.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.job4j.chat.domain.Message;
+import ru.job4j.chat.repository.MessageRepository;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class MessageIndexTest {
+    private static final long LOAD_TIMEOUT_MS = 5000;
+
+    @Test
+    public void whenLoadedFromSnapshotThenChangesSinceTheSnapshotAreCaughtUp(@TempDir Path directory) throws Exception {
+        String snapshot = directory.resolve("message-index.snapshot").toString();
+        Message edited = message(5, "hello world");
+        Message deleted = message(6, "soon deleted");
+        Message recent = message(20_002, "recent words");
+        MessageRepository before = mock(MessageRepository.class);
+        when(before.findByIdGreaterThanOrderById(eq(0), any())).thenReturn(List.of(edited, deleted, recent));
+        MessageIndex written = new MessageIndex(before, snapshot);
+        load(written);
+        written.snapshot();
+
+        Message afterEdit = message(5, "hello again");
+        MessageRepository after = mock(MessageRepository.class);
+        when(after.findIdsBetween(eq(0), eq(20_002), any())).thenReturn(List.of(5, 20_002));
+        when(after.findChangedSince(eq(0), eq(10_002), any(), any())).thenReturn(List.of(afterEdit, recent));
+        when(after.findAllById(anyIterable())).thenReturn(List.of(afterEdit));
+        MessageIndex loaded = new MessageIndex(after, snapshot);
+        load(loaded);
+
+        assertEquals(2, loaded.getDocuments());
+        assertEquals(20_002, loaded.getWatermark());
+        assertEquals(List.of(afterEdit), loaded.search("again", 1, 10));
+    }
+
+    private static void load(MessageIndex index) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + LOAD_TIMEOUT_MS;
+        index.start();
+        while (!index.isReady() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(index.isReady());
+    }
+
+    private static Message message(int id, String text) {
+        Message message = new Message(text);
+        message.setId(id);
+        message.setRoomId(1);
+        return message;
+    }
+}
@@ -0,0 +1,61 @@
+package ru.job4j.chat.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.job4j.chat.event.MessageRetentionEvent;
+
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PartitionManagerTest {
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+
+    @Test
+    public void whenPartitionIsOfMonthBeforeTheOldestKeptThenItExpires() {
+        List<String> partitions = List.of("message_default", "message_p202312", "message_p202401",
+                "message_p202402", "message_p202403", "message_p2024", "message_archive");
+        assertEquals(List.of("message_p202312", "message_p202401"),
+                PartitionManager.expired(partitions, YearMonth.of(2024, 2)));
+    }
+
+    @Test
+    public void whenTableIsNotPartitionedThenNothingIsMaintained() {
+        when(jdbcTemplate.execute(any(ConnectionCallback.class))).thenReturn(false);
+        PartitionManager manager = new PartitionManager(jdbcTemplate, eventPublisher, 3, 1, "drop");
+        manager.maintain();
+        assertFalse(manager.isPartitioned());
+        verify(jdbcTemplate, never()).execute(anyString());
+        verify(eventPublisher, never()).publishEvent(any(Object.class));
+    }
+
+    @Test
+    public void whenRetentionIsAppliedThenOldPartitionsAreDroppedAndAnnounced() {
+        YearMonth now = YearMonth.now();
+        String expired = "message_p" + now.minusMonths(3).format(SUFFIX);
+        String kept = "message_p" + now.minusMonths(2).format(SUFFIX);
+        when(jdbcTemplate.execute(any(ConnectionCallback.class))).thenReturn(true);
+        when(jdbcTemplate.queryForObject(anyString(), eq(Boolean.class))).thenReturn(true);
+        when(jdbcTemplate.queryForList(anyString(), eq(String.class))).thenReturn(List.of(expired, kept));
+        new PartitionManager(jdbcTemplate, eventPublisher, 0, 2, "drop").maintain();
+        verify(jdbcTemplate).execute("ALTER TABLE message DETACH PARTITION " + expired);
+        verify(jdbcTemplate).execute("DROP TABLE " + expired);
+        verify(jdbcTemplate, never()).execute("ALTER TABLE message DETACH PARTITION " + kept);
+        verify(eventPublisher).publishEvent(new MessageRetentionEvent(now.minusMonths(2).atDay(1).atStartOfDay()));
+    }
+}